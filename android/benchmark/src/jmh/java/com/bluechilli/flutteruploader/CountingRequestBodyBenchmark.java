@@ -0,0 +1,102 @@
+package com.bluechilli.flutteruploader;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the overhead of {@link CountingRequestBody} and its {@code CountingSink}, which every
+ * upload is written through, against writing the same body directly.
+ *
+ * <p>The payload is written in {@code writeSize} blocks like {@code FileRangeRequestBody} does,
+ * into a sink which discards the bytes, so the numbers exclude disk and network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CountingRequestBodyBenchmark {
+  private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+  @Param({"65536", "4194304"})
+  public int payloadSize;
+
+  @Param({"8192", "262144"})
+  public int writeSize;
+
+  private RequestBody body;
+  private BufferedSink sink;
+
+  @Setup
+  public void setUp() {
+    byte[] payload = new byte[payloadSize];
+    new Random(42).nextBytes(payload);
+    body = new BlockRequestBody(payload, writeSize);
+    sink = Okio.buffer(Okio.blackhole());
+  }
+
+  @Benchmark
+  public void direct() throws IOException {
+    body.writeTo(sink);
+    sink.flush();
+  }
+
+  @Benchmark
+  public void counting(Blackhole blackhole) throws IOException {
+    CountProgressListener listener =
+        new CountProgressListener() {
+          @Override
+          public void OnProgress(String taskId, long bytesWritten, long contentLength) {
+            blackhole.consume(bytesWritten);
+          }
+
+          @Override
+          public void OnError(String taskId, String code, String message) {
+            throw new IllegalStateException(message);
+          }
+        };
+
+    new CountingRequestBody(body, "task", listener).writeTo(sink);
+    sink.flush();
+  }
+
+  /** Writes an in-memory payload in fixed size blocks. */
+  private static class BlockRequestBody extends RequestBody {
+    private final byte[] payload;
+    private final int blockSize;
+
+    BlockRequestBody(byte[] payload, int blockSize) {
+      this.payload = payload;
+      this.blockSize = blockSize;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return OCTET_STREAM;
+    }
+
+    @Override
+    public long contentLength() {
+      return payload.length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      for (int offset = 0; offset < payload.length; offset += blockSize) {
+        sink.write(payload, offset, Math.min(blockSize, payload.length - offset));
+      }
+    }
+  }
+}
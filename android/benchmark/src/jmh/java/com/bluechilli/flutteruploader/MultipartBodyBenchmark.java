@@ -0,0 +1,88 @@
+package com.bluechilli.flutteruploader;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Builds the multipart body of a form upload the way {@code UploadWorker.prepareRequest} and the
+ * file loop of {@code doWorkInternal} do, and writes its framing.
+ *
+ * <p>Files are attached as small in-memory bodies with a known length, standing in for {@code
+ * FileRangeRequestBody}, so the numbers cover the part headers and boundaries only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultipartBodyBenchmark {
+  private static final MediaType IMAGE_JPEG = MediaType.parse("image/jpeg");
+
+  @Param({"0", "20"})
+  public int parameterCount;
+
+  @Param({"1", "20"})
+  public int fileCount;
+
+  private Map<String, String> parameters;
+  private RequestBody[] fileBodies;
+  private BufferedSink sink;
+
+  @Setup
+  public void setUp() {
+    parameters = new LinkedHashMap<>();
+    for (int i = 0; i < parameterCount; i++) {
+      parameters.put("field" + i, "value of form field " + i);
+    }
+
+    fileBodies = new RequestBody[fileCount];
+    for (int i = 0; i < fileCount; i++) {
+      fileBodies[i] = RequestBody.create(new byte[16], IMAGE_JPEG);
+    }
+
+    sink = Okio.buffer(Okio.blackhole());
+  }
+
+  @Benchmark
+  public long build() throws IOException {
+    // The content length is computed once per request, when the body is sent.
+    return newBody().contentLength();
+  }
+
+  @Benchmark
+  public void buildAndWrite() throws IOException {
+    newBody().writeTo(sink);
+    sink.flush();
+  }
+
+  private MultipartBody newBody() {
+    MultipartBody.Builder builder = new MultipartBody.Builder();
+    builder.setType(MultipartBody.FORM);
+
+    for (String key : parameters.keySet()) {
+      String parameter = parameters.get(key);
+      if (parameter != null) {
+        builder.addFormDataPart(key, parameter);
+      }
+    }
+
+    for (int i = 0; i < fileBodies.length; i++) {
+      builder.addFormDataPart("file" + i, "IMG_2021" + i + ".jpg", fileBodies[i]);
+    }
+
+    return builder.build();
+  }
+}
@@ -0,0 +1,218 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the concurrency limit of the {@link UploadScheduler} to the measured throughput.
+ *
+ * <p>Every {@link #SAMPLE_INTERVAL_MS} the aggregate throughput of all uploads is sampled from the
+ * {@link ThroughputMeter} and compared with a baseline, a moving average of the throughput at the
+ * current limit. While uploads are waiting for a slot, the limit grows by one as long as the
+ * throughput keeps up with the baseline, and is halved once it stays below the baseline for {@link
+ * #DECREASE_SAMPLES} samples in a row (additive increase, multiplicative decrease). A single dip,
+ * e.g. between two files, does not lower the limit. After a decrease, the baseline is measured
+ * again and the limit is held for {@link #HOLD_SAMPLES} samples.
+ *
+ * <p>The limit stays within 1 and the ceiling, which is the {@code ADAPTIVE_MAX_CONCURRENT_TASKS}
+ * meta-data or the last limit set through {@link #setMaxConcurrentTasks(int)}, and is left alone
+ * while no uploads are queued. Once disabled, the configured limit is restored.
+ */
+public class AdaptiveConcurrencyController {
+  public static final String STAT_ADAPTIVE = "adaptiveConcurrency";
+  public static final String STAT_THROUGHPUT_SAMPLES = "throughputSamples";
+
+  private static final String TAG = "AdaptiveConcurrency";
+  private static final long SAMPLE_INTERVAL_MS = 2000;
+  private static final int MAX_SAMPLES = 10;
+  /** A sample below this fraction of the baseline is considered low. */
+  static final double DECREASE_THRESHOLD = 0.8;
+  /** Consecutive low samples which halve the limit. */
+  static final int DECREASE_SAMPLES = 2;
+  /** Samples after a decrease during which the limit is not changed. */
+  static final int HOLD_SAMPLES = 3;
+  /** Weight of a new sample in the baseline. */
+  private static final double BASELINE_WEIGHT = 0.25;
+
+  private static AdaptiveConcurrencyController instance = null;
+
+  private final UploadScheduler scheduler;
+  private final ThroughputMeter meter;
+  private final ScheduledExecutorService sampler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "flutter_uploader-sampler");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** Recent throughput samples in bytes per second, the newest last. */
+  private final Deque<Long> samples = new ArrayDeque<>();
+
+  private ScheduledFuture<?> samplerFuture = null;
+  private long lastBytesWritten;
+  private long lastSampleTime;
+
+  /** Upper bound of the adaptive limit. */
+  private int ceiling;
+  /** The limit before adaptive concurrency was enabled, or as set since. */
+  private int configuredLimit;
+
+  /** Moving average of the throughput at the current limit, 0 while it is measured again. */
+  private double baseline;
+  private int lowSamples;
+  private int holdSamples;
+
+  AdaptiveConcurrencyController(
+      UploadScheduler scheduler, ThroughputMeter meter, int maxConcurrentTasks) {
+    this.scheduler = scheduler;
+    this.meter = meter;
+    this.ceiling = Math.max(1, maxConcurrentTasks);
+    this.configuredLimit = scheduler.getMaxConcurrentTasks();
+  }
+
+  public static synchronized AdaptiveConcurrencyController getInstance(Context context) {
+    if (instance == null) {
+      instance =
+          new AdaptiveConcurrencyController(
+              UploadScheduler.getInstance(context),
+              ThroughputMeter.getInstance(),
+              FlutterUploaderInitializer.getAdaptiveMaxConcurrentTasks(context));
+    }
+    return instance;
+  }
+
+  public synchronized boolean isEnabled() {
+    return samplerFuture != null;
+  }
+
+  public synchronized void setEnabled(boolean enabled) {
+    if (enabled == isEnabled()) {
+      return;
+    }
+
+    if (enabled) {
+      samples.clear();
+      configuredLimit = scheduler.getMaxConcurrentTasks();
+      baseline = 0;
+      lowSamples = 0;
+      holdSamples = 0;
+      if (configuredLimit > ceiling) {
+        scheduler.setMaxConcurrentTasks(ceiling);
+      }
+      lastBytesWritten = meter.getBytesWritten();
+      lastSampleTime = SystemClock.elapsedRealtime();
+      samplerFuture =
+          sampler.scheduleWithFixedDelay(
+              this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    } else {
+      samplerFuture.cancel(false);
+      samplerFuture = null;
+      scheduler.setMaxConcurrentTasks(configuredLimit);
+    }
+  }
+
+  /**
+   * Sets the concurrency limit of the scheduler. While enabled, the limit becomes the ceiling of
+   * the adaptive limit instead, and is restored once disabled.
+   */
+  public synchronized void setMaxConcurrentTasks(int maxConcurrentTasks) {
+    configuredLimit = maxConcurrentTasks;
+    if (isEnabled()) {
+      ceiling = maxConcurrentTasks;
+      scheduler.setMaxConcurrentTasks(
+          Math.min(scheduler.getMaxConcurrentTasks(), maxConcurrentTasks));
+    } else {
+      scheduler.setMaxConcurrentTasks(maxConcurrentTasks);
+    }
+  }
+
+  public synchronized Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put(STAT_ADAPTIVE, isEnabled());
+    stats.put(STAT_THROUGHPUT_SAMPLES, new ArrayList<>(samples));
+    return stats;
+  }
+
+  private synchronized void sample() {
+    long now = SystemClock.elapsedRealtime();
+    long bytesWritten = meter.getBytesWritten();
+    long elapsed = Math.max(1, now - lastSampleTime);
+    long throughput = (bytesWritten - lastBytesWritten) * 1000 / elapsed;
+    lastBytesWritten = bytesWritten;
+    lastSampleTime = now;
+
+    samples.addLast(throughput);
+    if (samples.size() > MAX_SAMPLES) {
+      samples.removeFirst();
+    }
+
+    int limit = scheduler.getMaxConcurrentTasks();
+    boolean saturated = scheduler.getQueuedCount() > 0;
+    boolean low = saturated && baseline > 0 && throughput < baseline * DECREASE_THRESHOLD;
+    lowSamples = low ? lowSamples + 1 : 0;
+
+    int nextLimit =
+        nextLimit(limit, ceiling, saturated, (long) baseline, throughput, lowSamples, holdSamples);
+
+    if (holdSamples > 0) {
+      holdSamples--;
+    }
+
+    if (nextLimit < limit) {
+      // Measure the baseline again at the lower limit.
+      baseline = 0;
+      lowSamples = 0;
+      holdSamples = HOLD_SAMPLES;
+    } else if (saturated && !low) {
+      // Samples without queued uploads, or of a dip, say nothing about the current limit.
+      baseline =
+          baseline > 0
+              ? baseline + BASELINE_WEIGHT * (throughput - baseline)
+              : Math.max(1, throughput);
+    }
+
+    if (nextLimit != limit) {
+      Log.d(TAG, "throughput " + throughput + " B/s, concurrency " + limit + " -> " + nextLimit);
+      scheduler.setMaxConcurrentTasks(nextLimit);
+    }
+  }
+
+  /**
+   * Returns the next limit, given the current {@code limit}, the number of consecutive {@code
+   * lowSamples} and the remaining {@code holdSamples}. A {@code baseline} of 0 is not known yet.
+   */
+  static int nextLimit(
+      int limit,
+      int max,
+      boolean saturated,
+      long baseline,
+      long throughput,
+      int lowSamples,
+      int holdSamples) {
+    int clamped = Math.max(1, Math.min(limit, max));
+    if (!saturated || baseline <= 0 || holdSamples > 0) {
+      return clamped;
+    }
+
+    if (lowSamples >= DECREASE_SAMPLES) {
+      return Math.max(1, clamped / 2);
+    }
+
+    if (throughput >= baseline) {
+      return Math.min(max, clamped + 1);
+    }
+
+    return clamped;
+  }
+}
@@ -0,0 +1,37 @@
+package com.bluechilli.flutteruploader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sums up the progress of several concurrently uploaded parts of the same file and reports it as
+ * the progress of the whole file.
+ */
+public class AggregateProgressListener {
+  private final CountProgressListener delegate;
+  private final AtomicLongArray partBytes;
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final long contentLength;
+
+  public AggregateProgressListener(
+      CountProgressListener delegate, int partCount, long contentLength) {
+    this.delegate = delegate;
+    this.partBytes = new AtomicLongArray(partCount);
+    this.contentLength = contentLength;
+  }
+
+  public CountProgressListener forPart(final int index) {
+    return new CountProgressListener() {
+      @Override
+      public void OnProgress(String taskId, long partBytesWritten, long partContentLength) {
+        long delta = partBytesWritten - partBytes.getAndSet(index, partBytesWritten);
+        delegate.OnProgress(taskId, bytesWritten.addAndGet(delta), contentLength);
+      }
+
+      @Override
+      public void OnError(String taskId, String code, String message) {
+        delegate.OnError(taskId, code, message);
+      }
+    };
+  }
+}
@@ -0,0 +1,233 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.view.FlutterCallbackInformation;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Owns the {@link FlutterEngine} which runs the background handler registered through {@code
+ * setBackgroundHandler}.
+ *
+ * <p>The engine is shared by all workers, which hold a reference while they run. It is started
+ * asynchronously, either by the first worker or ahead of time through {@link #prewarm()} once
+ * uploads are enqueued, so that loading the Flutter assets does not delay any upload. Once no
+ * worker references it for {@code BACKGROUND_ENGINE_IDLE_TIMEOUT_MS}, the engine is destroyed and
+ * its memory returned. A negative timeout keeps the engine alive for the life of the process.
+ *
+ * <p>Progress and results are delivered to the background handler in batches, see {@link
+ * FlutterUploaderPlugin#setBackgroundBatching(long, int)}. Every result is delivered once per
+ * process, an engine which is started again does not receive the results of its predecessors.
+ *
+ * <p>All state is confined to the main thread, the public methods may be called from any thread.
+ */
+public class BackgroundEngineManager {
+  public static final String STAT_ENGINE_RUNNING = "backgroundEngineRunning";
+  public static final String STAT_ENGINE_STARTS = "backgroundEngineStarts";
+  public static final String STAT_ENGINE_STARTUP_MILLIS = "backgroundEngineStartupMillis";
+  public static final String STAT_ENGINE_NATIVE_HEAP_BYTES = "backgroundEngineNativeHeapBytes";
+
+  private static final String TAG = "BackgroundEngine";
+
+  private static BackgroundEngineManager instance = null;
+
+  private final Context context;
+  private final long idleTimeoutMillis;
+  private final long batchWindowMillis;
+  private final int maxBatchSize;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Runnable idleTeardown = this::stopIfIdle;
+
+  /** Results delivered to the background handler, by this or an earlier engine. */
+  private final Set<String> deliveredResults = new HashSet<>();
+
+  @Nullable private FlutterEngine engine;
+  private boolean starting = false;
+  private int references = 0;
+
+  private int startCount = 0;
+  private long startupMillis = -1;
+  private long nativeHeapBytes = -1;
+
+  BackgroundEngineManager(
+      Context context, long idleTimeoutMillis, long batchWindowMillis, int maxBatchSize) {
+    this.context = context;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.batchWindowMillis = batchWindowMillis;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  public static synchronized BackgroundEngineManager getInstance(Context context) {
+    if (instance == null) {
+      Context applicationContext = context.getApplicationContext();
+      instance =
+          new BackgroundEngineManager(
+              applicationContext,
+              FlutterUploaderInitializer.getBackgroundEngineIdleTimeout(applicationContext),
+              FlutterUploaderInitializer.getBackgroundEventBatchWindow(applicationContext),
+              FlutterUploaderInitializer.getBackgroundEventBatchSize(applicationContext));
+    }
+    return instance;
+  }
+
+  /** Starts the engine ahead of time, it is torn down again if no worker picks it up. */
+  public void prewarm() {
+    runOnMainThread(
+        () -> {
+          start();
+          if (references == 0) {
+            scheduleTeardown();
+          }
+        });
+  }
+
+  /** Keeps the engine running, starting it if necessary, until {@link #release()} is called. */
+  public void acquire() {
+    runOnMainThread(
+        () -> {
+          references++;
+          mainHandler.removeCallbacks(idleTeardown);
+          start();
+        });
+  }
+
+  public void release() {
+    runOnMainThread(
+        () -> {
+          references = Math.max(0, references - 1);
+          if (references == 0) {
+            scheduleTeardown();
+          }
+        });
+  }
+
+  /**
+   * Returns whether the engine is running and how expensive its last start was. The native heap
+   * growth while starting approximates the memory held by the engine, the Dart heap is not
+   * included. Must be called on the main thread.
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put(STAT_ENGINE_RUNNING, engine != null);
+    stats.put(STAT_ENGINE_STARTS, startCount);
+    stats.put(STAT_ENGINE_STARTUP_MILLIS, startupMillis);
+    stats.put(STAT_ENGINE_NATIVE_HEAP_BYTES, nativeHeapBytes);
+    return stats;
+  }
+
+  private void start() {
+    if (engine != null || starting) {
+      return;
+    }
+
+    long callbackHandle = SharedPreferenceHelper.getCallbackHandle(context);
+    Log.d(TAG, "callbackHandle: " + callbackHandle);
+    if (callbackHandle == -1L) {
+      return;
+    }
+
+    starting = true;
+    long startTime = SystemClock.elapsedRealtime();
+    FlutterLoader flutterLoader = FlutterInjector.instance().flutterLoader();
+    try {
+      flutterLoader.startInitialization(context);
+      flutterLoader.ensureInitializationCompleteAsync(
+          context,
+          null,
+          mainHandler,
+          () -> {
+            starting = false;
+            startEngine(flutterLoader, callbackHandle, startTime);
+          });
+    } catch (RuntimeException e) {
+      starting = false;
+      Log.e(TAG, "Can not initialize Flutter", e);
+    }
+  }
+
+  private void startEngine(FlutterLoader flutterLoader, long callbackHandle, long startTime) {
+    FlutterCallbackInformation callbackInfo =
+        FlutterCallbackInformation.lookupCallbackInformation(callbackHandle);
+    if (callbackInfo == null) {
+      Log.e(TAG, "Background handler " + callbackHandle + " not found");
+      return;
+    }
+
+    long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+    try {
+      engine = new FlutterEngine(context);
+
+      // The plugins were registered by the engine, before any event could have been delivered.
+      FlutterPlugin plugin = engine.getPlugins().get(FlutterUploaderPlugin.class);
+      if (plugin instanceof FlutterUploaderPlugin) {
+        ((FlutterUploaderPlugin) plugin).setBackgroundBatching(batchWindowMillis, maxBatchSize);
+        ((FlutterUploaderPlugin) plugin).setDeliveredResults(deliveredResults);
+      }
+
+      engine
+          .getDartExecutor()
+          .executeDartCallback(
+              new DartExecutor.DartCallback(
+                  context.getAssets(), flutterLoader.findAppBundlePath(), callbackInfo));
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Can not start engine", e);
+      stop();
+      return;
+    }
+
+    startCount++;
+    startupMillis = SystemClock.elapsedRealtime() - startTime;
+    nativeHeapBytes = Debug.getNativeHeapAllocatedSize() - nativeHeapBefore;
+    Log.d(TAG, "Started engine in " + startupMillis + " ms, native heap +" + nativeHeapBytes);
+
+    if (references == 0) {
+      scheduleTeardown();
+    }
+  }
+
+  private void scheduleTeardown() {
+    mainHandler.removeCallbacks(idleTeardown);
+    if (idleTimeoutMillis >= 0) {
+      mainHandler.postDelayed(idleTeardown, idleTimeoutMillis);
+    }
+  }
+
+  private void stopIfIdle() {
+    if (references == 0) {
+      stop();
+    }
+  }
+
+  private void stop() {
+    if (engine != null) {
+      Log.d(TAG, "Destroying engine.");
+      try {
+        engine.destroy();
+      } catch (Throwable e) {
+        Log.e(TAG, "Can not destroy engine", e);
+      }
+      engine = null;
+    }
+  }
+
+  private void runOnMainThread(Runnable runnable) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      runnable.run();
+    } else {
+      mainHandler.post(runnable);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.bluechilli.flutteruploader;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Process-wide upload bandwidth budget.
+ *
+ * <p>Every upload owns one {@link Share} of the budget, weighted by its priority, which counts
+ * while at least one of its request bodies is being written. Each share is a token bucket refilled
+ * at {@code bytesPerSecond * weight / totalWeight}, so concurrent uploads split the budget fairly
+ * however many requests they send in parallel, and a share which is released immediately leaves
+ * its bandwidth to the remaining ones. A budget of 0 disables throttling.
+ */
+public class BandwidthAllocator {
+  /** Maximum burst of a share, relative to its rate. */
+  private static final double BURST_SECONDS = 0.25;
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+
+  private static final BandwidthAllocator instance = new BandwidthAllocator();
+
+  private long bytesPerSecond = 0;
+  private int totalWeight = 0;
+
+  public static BandwidthAllocator getInstance() {
+    return instance;
+  }
+
+  /** Bandwidth weight of uploads with the given {@link UploadPriority}. */
+  public static int getWeight(int priority) {
+    return 1 << Math.max(UploadPriority.LOW, Math.min(UploadPriority.HIGH, priority));
+  }
+
+  public synchronized long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  /** Changes the budget shared by all uploads, 0 = unlimited. */
+  public synchronized void setBytesPerSecond(long bytesPerSecond) {
+    if (bytesPerSecond < 0) {
+      throw new IllegalArgumentException("bytesPerSecond < 0: " + bytesPerSecond);
+    }
+    this.bytesPerSecond = bytesPerSecond;
+    notifyAll();
+  }
+
+  /** Creates a share of the budget, it only counts while it is {@link Share#acquire() acquired}. */
+  public Share newShare(int weight) {
+    return new Share(Math.max(1, weight));
+  }
+
+  public class Share {
+    private final int weight;
+    private double tokens = 0;
+    private long lastRefillNanos = System.nanoTime();
+    private int holders = 0;
+
+    Share(int weight) {
+      this.weight = weight;
+    }
+
+    /**
+     * Blocks until the share is allowed to send {@code byteCount} bytes. The bytes are taken from
+     * the bucket all at once, which may leave it in debt, so that large writes do not have to be
+     * split.
+     */
+    public void take(long byteCount) throws InterruptedIOException {
+      synchronized (BandwidthAllocator.this) {
+        while (true) {
+          if (bytesPerSecond <= 0 || holders == 0) {
+            return;
+          }
+
+          double rate = (double) bytesPerSecond * weight / totalWeight;
+          refill(rate);
+
+          if (tokens > 0) {
+            tokens -= byteCount;
+            return;
+          }
+
+          long waitNanos = Math.max(1, (long) (-tokens / rate * NANOS_PER_SECOND));
+          try {
+            BandwidthAllocator.this.wait(
+                waitNanos / NANOS_PER_MILLI, (int) (waitNanos % NANOS_PER_MILLI));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+          }
+        }
+      }
+    }
+
+    /**
+     * Counts the share towards the budget until it is released as often as it was acquired, so
+     * concurrent request bodies of the same upload hold it once.
+     */
+    public void acquire() {
+      synchronized (BandwidthAllocator.this) {
+        if (holders++ == 0) {
+          totalWeight += weight;
+          lastRefillNanos = System.nanoTime();
+        }
+      }
+    }
+
+    public void release() {
+      synchronized (BandwidthAllocator.this) {
+        if (holders > 0 && --holders == 0) {
+          totalWeight -= weight;
+          // The remaining shares are refilled faster now.
+          BandwidthAllocator.this.notifyAll();
+        }
+      }
+    }
+
+    private void refill(double rate) {
+      long now = System.nanoTime();
+      double burst = Math.max(1, rate * BURST_SECONDS);
+      tokens = Math.min(burst, tokens + rate * (now - lastRefillNanos) / NANOS_PER_SECOND);
+      lastRefillNanos = now;
+    }
+  }
+}
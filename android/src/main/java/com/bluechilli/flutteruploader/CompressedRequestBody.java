@@ -0,0 +1,95 @@
+package com.bluechilli.flutteruploader;
+
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Compresses another request body while it is written. The compressed length is unknown upfront,
+ * so the body is sent with chunked transfer encoding.
+ */
+public class CompressedRequestBody extends RequestBody {
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+
+  /** Formats which are compressed already and hardly shrink any further. */
+  private static final Set<String> INCOMPRESSIBLE_TYPES =
+      new HashSet<>(
+          Arrays.asList(
+              "application/zip",
+              "application/gzip",
+              "application/x-gzip",
+              "application/x-7z-compressed",
+              "application/x-rar-compressed",
+              "application/x-bzip2",
+              "application/x-xz",
+              "application/zstd",
+              "application/pdf",
+              "application/vnd.android.package-archive"));
+
+  /** Exceptions from the image, audio and video types which are not compressed. */
+  private static final Set<String> COMPRESSIBLE_MEDIA_TYPES =
+      new HashSet<>(Arrays.asList("image/svg+xml", "image/bmp", "image/x-ms-bmp", "audio/wav"));
+
+  private final RequestBody body;
+  private final String encoding;
+
+  public CompressedRequestBody(RequestBody body, String encoding) {
+    if (!GZIP.equals(encoding) && !DEFLATE.equals(encoding)) {
+      throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+    }
+    this.body = body;
+    this.encoding = encoding;
+  }
+
+  public static boolean isSupported(String encoding) {
+    return GZIP.equals(encoding) || DEFLATE.equals(encoding);
+  }
+
+  /** Whether compressing content of {@code mimeType} is worth the effort. */
+  public static boolean isCompressible(String mimeType) {
+    String type = mimeType.toLowerCase();
+    if (COMPRESSIBLE_MEDIA_TYPES.contains(type)) {
+      return true;
+    }
+    if (type.startsWith("image/") || type.startsWith("video/") || type.startsWith("audio/")) {
+      return false;
+    }
+    return !INCOMPRESSIBLE_TYPES.contains(type);
+  }
+
+  /** The value of the {@code Content-Encoding} header. */
+  public String getEncoding() {
+    return encoding;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return body.contentType();
+  }
+
+  @Override
+  public long contentLength() {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(@NonNull BufferedSink sink) throws IOException {
+    Sink compressingSink =
+        GZIP.equals(encoding) ? new GzipSink(sink) : new DeflaterSink(sink, new Deflater());
+
+    try (BufferedSink compressedSink = Okio.buffer(compressingSink)) {
+      body.writeTo(compressedSink);
+    }
+  }
+}
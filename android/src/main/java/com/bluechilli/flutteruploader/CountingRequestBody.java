@@ -15,12 +15,31 @@ public class CountingRequestBody extends RequestBody {
   protected final RequestBody _body;
   protected final CountProgressListener _listener;
   protected final String _taskId;
+  protected final BandwidthAllocator.Share _share;
   protected CountingSink _countingSink;
 
   public CountingRequestBody(RequestBody body, String taskId, CountProgressListener listener) {
+    this(body, taskId, listener, BandwidthAllocator.getWeight(UploadPriority.NORMAL));
+  }
+
+  public CountingRequestBody(
+      RequestBody body, String taskId, CountProgressListener listener, int bandwidthWeight) {
+    this(body, taskId, listener, BandwidthAllocator.getInstance().newShare(bandwidthWeight));
+  }
+
+  /**
+   * Creates a body which is throttled by {@code share}, the bodies of an upload which sends several
+   * requests at once pass the same share so that they split its bandwidth.
+   */
+  public CountingRequestBody(
+      RequestBody body,
+      String taskId,
+      CountProgressListener listener,
+      BandwidthAllocator.Share share) {
     _body = body;
     _taskId = taskId;
     _listener = listener;
+    _share = share;
   }
 
   @Override
@@ -35,14 +54,17 @@ public class CountingRequestBody extends RequestBody {
 
   @Override
   public void writeTo(@NonNull BufferedSink sink) throws IOException {
+    _share.acquire();
     try {
-      _countingSink = new CountingSink(this, sink);
+      _countingSink = new CountingSink(this, sink, _share);
       BufferedSink bufferedSink = Okio.buffer(_countingSink);
       _body.writeTo(bufferedSink);
 
       bufferedSink.flush();
     } catch (IOException ex) {
       sendError(ex);
+    } finally {
+      _share.release();
     }
   }
 
@@ -61,16 +83,20 @@ public class CountingRequestBody extends RequestBody {
   protected static class CountingSink extends ForwardingSink {
     private long _bytesWritten;
     private final CountingRequestBody _parent;
+    private final BandwidthAllocator.Share _share;
 
-    public CountingSink(CountingRequestBody parent, Sink sink) {
+    public CountingSink(CountingRequestBody parent, Sink sink, BandwidthAllocator.Share share) {
       super(sink);
       _parent = parent;
+      _share = share;
     }
 
     @Override
     public void write(@NonNull Buffer source, long byteCount) throws IOException {
       try {
+        _share.take(byteCount);
         super.write(source, byteCount);
+        ThroughputMeter.getInstance().record(byteCount);
 
         _bytesWritten += byteCount;
 
@@ -4,8 +4,13 @@ import java.util.Map;
 
 public class FileItem {
 
+  /** Size of the file in bytes, -1 until it was resolved. */
+  public static final long UNKNOWN_SIZE = -1;
+
   private String fieldname;
   private String path;
+  private long size = UNKNOWN_SIZE;
+  private String mimeType;
 
   public FileItem(String path) {
     this.path = path;
@@ -27,4 +32,23 @@ public class FileItem {
   public String getPath() {
     return path;
   }
+
+  public long getSize() {
+    return size;
+  }
+
+  public FileItem setSize(long size) {
+    this.size = size;
+    return this;
+  }
+
+  /** The resolved mime type, or null until it was resolved. */
+  public String getMimeType() {
+    return mimeType;
+  }
+
+  public FileItem setMimeType(String mimeType) {
+    this.mimeType = mimeType;
+    return this;
+  }
 }
@@ -14,22 +14,40 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.work.Configuration;
 import androidx.work.WorkManager;
-import java.util.concurrent.Executors;
+import com.bluechilli.flutteruploader.plugin.CachingStreamHandler;
 
 public class FlutterUploaderInitializer extends ContentProvider {
 
   private static final String TAG = "UploaderInitializer";
   private static final int DEFAULT_MAX_CONCURRENT_TASKS = 3;
+  private static final int DEFAULT_MAX_CONCURRENT_TASKS_PER_HOST = 0;
+  private static final int DEFAULT_BANDWIDTH_LIMIT = 0;
+  private static final int DEFAULT_ADAPTIVE_CONCURRENCY = 0;
+  private static final int DEFAULT_ADAPTIVE_MAX_CONCURRENT_TASKS = 8;
   private static final int DEFAULT_UPLOAD_CONNECTION_TIMEOUT = 3600;
+  private static final int DEFAULT_PROGRESS_UPDATE_INTERVAL_MS = 250;
+  private static final int DEFAULT_PROGRESS_UPDATE_STEP_PERCENT = 1;
+  private static final int DEFAULT_PROGRESS_UPDATE_STEP_BYTES = 0;
+  private static final int DEFAULT_MAX_RESPONSE_SIZE = 0;
+  private static final int DEFAULT_RESPONSE_MEMORY_THRESHOLD = 8 * 1024;
+  private static final int DEFAULT_SOCKET_SEND_BUFFER_SIZE = 0;
+  private static final int DEFAULT_BACKGROUND_ENGINE_IDLE_TIMEOUT_MS = 60 * 1000;
+  private static final int DEFAULT_BACKGROUND_EVENT_BATCH_WINDOW_MS = 500;
+  private static final int DEFAULT_BACKGROUND_EVENT_BATCH_SIZE = 100;
+
+  @Nullable private static volatile Bundle metaData;
 
   @Override
   public boolean onCreate() {
-    int maximumConcurrentTask = getMaxConcurrentTaskMetadata(getContext());
+    // Upload concurrency is enforced by the UploadScheduler, WorkManager shares its thread pool.
+    UploadScheduler scheduler = UploadScheduler.getInstance(getContext());
     WorkManager.initialize(
         getContext(),
-        new Configuration.Builder()
-            .setExecutor(Executors.newFixedThreadPool(maximumConcurrentTask))
-            .build());
+        new Configuration.Builder().setExecutor(scheduler.getExecutorService()).build());
+    BandwidthAllocator.getInstance().setBytesPerSecond(getBandwidthLimit(getContext()));
+    if (isAdaptiveConcurrencyEnabled(getContext())) {
+      AdaptiveConcurrencyController.getInstance(getContext()).setEnabled(true);
+    }
     return true;
   }
 
@@ -72,14 +90,7 @@ public class FlutterUploaderInitializer extends ContentProvider {
 
   public static int getMaxConcurrentTaskMetadata(Context context) {
     try {
-      ProviderInfo pi =
-          context
-              .getPackageManager()
-              .getProviderInfo(
-                  new ComponentName(
-                      context, "com.bluechilli.flutteruploader.FlutterUploaderInitializer"),
-                  PackageManager.GET_META_DATA);
-      Bundle bundle = pi.metaData;
+      Bundle bundle = getMetaData(context);
       int max =
           bundle.getInt(
               "com.bluechilli.flutteruploader.MAX_CONCURRENT_TASKS", DEFAULT_MAX_CONCURRENT_TASKS);
@@ -93,16 +104,41 @@ public class FlutterUploaderInitializer extends ContentProvider {
     return DEFAULT_MAX_CONCURRENT_TASKS;
   }
 
+  /** Maximum number of uploads running against the same host. 0 = only the global limit applies. */
+  public static int getMaxConcurrentTasksPerHost(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.MAX_CONCURRENT_TASKS_PER_HOST",
+        DEFAULT_MAX_CONCURRENT_TASKS_PER_HOST);
+  }
+
+  /** Upload bandwidth in bytes per second shared by all uploads. 0 = unlimited. */
+  public static int getBandwidthLimit(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.BANDWIDTH_LIMIT_BYTES_PER_SECOND",
+        DEFAULT_BANDWIDTH_LIMIT);
+  }
+
+  public static boolean isAdaptiveConcurrencyEnabled(Context context) {
+    return getIntMetaData(
+            context,
+            "com.bluechilli.flutteruploader.ADAPTIVE_CONCURRENCY",
+            DEFAULT_ADAPTIVE_CONCURRENCY)
+        != 0;
+  }
+
+  /** Upper bound of the concurrency limit when it is adjusted to the measured throughput. */
+  public static int getAdaptiveMaxConcurrentTasks(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.ADAPTIVE_MAX_CONCURRENT_TASKS",
+        DEFAULT_ADAPTIVE_MAX_CONCURRENT_TASKS);
+  }
+
   public static int getConnectionTimeout(Context context) {
     try {
-      ProviderInfo pi =
-          context
-              .getPackageManager()
-              .getProviderInfo(
-                  new ComponentName(
-                      context, "com.bluechilli.flutteruploader.FlutterUploaderInitializer"),
-                  PackageManager.GET_META_DATA);
-      Bundle bundle = pi.metaData;
+      Bundle bundle = getMetaData(context);
       int max =
           bundle.getInt(
               "com.bluechilli.flutteruploader.UPLOAD_CONNECTION_TIMEOUT_IN_SECONDS",
@@ -117,4 +153,124 @@ public class FlutterUploaderInitializer extends ContentProvider {
 
     return DEFAULT_UPLOAD_CONNECTION_TIMEOUT;
   }
+
+  public static int getEventCacheCapacity(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.EVENT_CACHE_CAPACITY",
+        CachingStreamHandler.DEFAULT_CAPACITY);
+  }
+
+  public static ProgressCoalescer createProgressCoalescer(Context context) {
+    try {
+      Bundle bundle = getMetaData(context);
+      int interval =
+          bundle.getInt(
+              "com.bluechilli.flutteruploader.PROGRESS_UPDATE_INTERVAL_MS",
+              DEFAULT_PROGRESS_UPDATE_INTERVAL_MS);
+      int stepPercent =
+          bundle.getInt(
+              "com.bluechilli.flutteruploader.PROGRESS_UPDATE_STEP_PERCENT",
+              DEFAULT_PROGRESS_UPDATE_STEP_PERCENT);
+      int stepBytes =
+          bundle.getInt(
+              "com.bluechilli.flutteruploader.PROGRESS_UPDATE_STEP_BYTES",
+              DEFAULT_PROGRESS_UPDATE_STEP_BYTES);
+      return new ProgressCoalescer(interval, stepPercent, stepBytes);
+    } catch (PackageManager.NameNotFoundException e) {
+      Log.e(TAG, "Failed to load meta-data, NameNotFound: " + e.getMessage());
+    } catch (NullPointerException e) {
+      Log.e(TAG, "Failed to load meta-data, NullPointer: " + e.getMessage());
+    }
+
+    return new ProgressCoalescer(
+        DEFAULT_PROGRESS_UPDATE_INTERVAL_MS,
+        DEFAULT_PROGRESS_UPDATE_STEP_PERCENT,
+        DEFAULT_PROGRESS_UPDATE_STEP_BYTES);
+  }
+
+  /** Maximum size in bytes of a response body, larger responses fail the upload. 0 = unlimited. */
+  public static long getMaxResponseSize(Context context) {
+    return getIntMetaData(
+        context, "com.bluechilli.flutteruploader.MAX_RESPONSE_SIZE", DEFAULT_MAX_RESPONSE_SIZE);
+  }
+
+  /** Response bodies larger than this are streamed to a file instead of being kept in memory. */
+  public static long getResponseMemoryThreshold(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.RESPONSE_MEMORY_THRESHOLD",
+        DEFAULT_RESPONSE_MEMORY_THRESHOLD);
+  }
+
+  /** Socket send buffer size in bytes for upload connections, 0 = system default. */
+  public static int getSocketSendBufferSize(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.SOCKET_SEND_BUFFER_SIZE",
+        DEFAULT_SOCKET_SEND_BUFFER_SIZE);
+  }
+
+  /**
+   * Time in milliseconds the background engine is kept alive without running uploads, negative to
+   * keep it alive for the life of the process.
+   */
+  public static long getBackgroundEngineIdleTimeout(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.BACKGROUND_ENGINE_IDLE_TIMEOUT_MS",
+        DEFAULT_BACKGROUND_ENGINE_IDLE_TIMEOUT_MS);
+  }
+
+  /** Time window in milliseconds over which events for the background handler are batched. */
+  public static long getBackgroundEventBatchWindow(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.BACKGROUND_EVENT_BATCH_WINDOW_MS",
+        DEFAULT_BACKGROUND_EVENT_BATCH_WINDOW_MS);
+  }
+
+  /** Maximum number of tasks whose events are delivered to the background handler at once. */
+  public static int getBackgroundEventBatchSize(Context context) {
+    return getIntMetaData(
+        context,
+        "com.bluechilli.flutteruploader.BACKGROUND_EVENT_BATCH_SIZE",
+        DEFAULT_BACKGROUND_EVENT_BATCH_SIZE);
+  }
+
+  private static int getIntMetaData(Context context, String key, int defaultValue) {
+    try {
+      return getMetaData(context).getInt(key, defaultValue);
+    } catch (PackageManager.NameNotFoundException e) {
+      Log.e(TAG, "Failed to load meta-data, NameNotFound: " + e.getMessage());
+    } catch (NullPointerException e) {
+      Log.e(TAG, "Failed to load meta-data, NullPointer: " + e.getMessage());
+    }
+
+    return defaultValue;
+  }
+
+  /**
+   * Returns the meta-data of this provider. It can only change with an app update, so it is loaded
+   * once per process rather than by every worker.
+   */
+  private static Bundle getMetaData(Context context) throws PackageManager.NameNotFoundException {
+    Bundle bundle = metaData;
+    if (bundle != null) {
+      return bundle;
+    }
+
+    ProviderInfo pi =
+        context
+            .getPackageManager()
+            .getProviderInfo(
+                new ComponentName(
+                    context, "com.bluechilli.flutteruploader.FlutterUploaderInitializer"),
+                PackageManager.GET_META_DATA);
+    bundle = pi.metaData != null ? pi.metaData : Bundle.EMPTY;
+    // Unparcels the bundle, it is only read from here on and may be shared between threads.
+    Log.d(TAG, "meta-data: " + bundle.keySet());
+    metaData = bundle;
+    return bundle;
+  }
 }
@@ -9,6 +9,7 @@ import androidx.lifecycle.LiveData;
 import androidx.work.WorkInfo;
 import androidx.work.WorkManager;
 import com.bluechilli.flutteruploader.plugin.CachingStreamHandler;
+import com.bluechilli.flutteruploader.plugin.EventBatcher;
 import com.bluechilli.flutteruploader.plugin.StatusListener;
 import com.bluechilli.flutteruploader.plugin.UploadObserver;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
@@ -22,6 +23,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /** FlutterUploaderPlugin */
 public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
@@ -29,6 +31,7 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
   private static final String CHANNEL_NAME = "flutter_uploader";
   private static final String PROGRESS_EVENT_CHANNEL_NAME = "flutter_uploader/events/progress";
   private static final String RESULT_EVENT_CHANNEL_NAME = "flutter_uploader/events/result";
+  private static final String METRICS_EVENT_CHANNEL_NAME = "flutter_uploader/events/metrics";
 
   private MethodChannel channel;
   private MethodCallHandlerImpl methodCallHandler;
@@ -37,10 +40,20 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
   private EventChannel progressEventChannel;
   private final CachingStreamHandler<Map<String, Object>> progressStreamHandler =
       new CachingStreamHandler<>();
+  private final EventBatcher<Map<String, Object>> progressBatcher =
+      new EventBatcher<>(progressStreamHandler);
 
   private EventChannel resultEventChannel;
   private final CachingStreamHandler<Map<String, Object>> resultStreamHandler =
       new CachingStreamHandler<>();
+  private final EventBatcher<Map<String, Object>> resultBatcher =
+      new EventBatcher<>(resultStreamHandler);
+
+  private EventChannel metricsEventChannel;
+  private final CachingStreamHandler<Map<String, Object>> metricsStreamHandler =
+      new CachingStreamHandler<>();
+  private final EventBatcher<Map<String, Object>> metricsBatcher =
+      new EventBatcher<>(metricsStreamHandler);
   private LiveData<List<WorkInfo>> workInfoLiveData;
 
   public static void registerWith(Registrar registrar) {
@@ -65,9 +78,13 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
 
   private void startListening(Context context, BinaryMessenger messenger) {
     final int timeout = FlutterUploaderInitializer.getConnectionTimeout(context);
+    final int cacheCapacity = FlutterUploaderInitializer.getEventCacheCapacity(context);
+    progressStreamHandler.setCapacity(cacheCapacity);
+    resultStreamHandler.setCapacity(cacheCapacity);
+    metricsStreamHandler.setCapacity(cacheCapacity);
 
     channel = new MethodChannel(messenger, CHANNEL_NAME);
-    methodCallHandler = new MethodCallHandlerImpl(context, timeout, this);
+    methodCallHandler = new MethodCallHandlerImpl(context, timeout, this, progressBatcher);
 
     uploadObserver = new UploadObserver(this);
     workInfoLiveData =
@@ -81,6 +98,9 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
 
     resultEventChannel = new EventChannel(messenger, RESULT_EVENT_CHANNEL_NAME);
     resultEventChannel.setStreamHandler(resultStreamHandler);
+
+    metricsEventChannel = new EventChannel(messenger, METRICS_EVENT_CHANNEL_NAME);
+    metricsEventChannel.setStreamHandler(metricsStreamHandler);
   }
 
   private void stopListening() {
@@ -101,8 +121,36 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
     resultEventChannel.setStreamHandler(null);
     resultEventChannel = null;
 
+    metricsEventChannel.setStreamHandler(null);
+    metricsEventChannel = null;
+
+    progressBatcher.clear();
+    resultBatcher.clear();
+    metricsBatcher.clear();
     progressStreamHandler.clear();
     resultStreamHandler.clear();
+    metricsStreamHandler.clear();
+  }
+
+  /**
+   * Batches progress and results for the engine of the background handler, so that a burst of
+   * finishing uploads wakes its isolate once per batch instead of once per event.
+   */
+  void setBackgroundBatching(long windowMillis, int maxBatchSize) {
+    progressBatcher.setMaxBatchSize(maxBatchSize);
+    progressBatcher.setWindow(windowMillis);
+    resultBatcher.setMaxBatchSize(maxBatchSize);
+    resultBatcher.setWindow(windowMillis);
+    metricsBatcher.setMaxBatchSize(maxBatchSize);
+    metricsBatcher.setWindow(windowMillis);
+  }
+
+  /**
+   * Skips the results in {@code deliveredResults} and adds those delivered by this engine, so that
+   * a restarted engine of the background handler does not receive the same results again.
+   */
+  void setDeliveredResults(Set<String> deliveredResults) {
+    uploadObserver.setDeliveredResults(deliveredResults);
   }
 
   @Override
@@ -111,7 +159,7 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
     args.put("taskId", id);
     args.put("status", UploadStatus.ENQUEUED);
 
-    resultStreamHandler.add(id, args);
+    addResult(id, args, false);
   }
 
   @Override
@@ -121,7 +169,11 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
     args.put("status", status);
     args.put("progress", progress);
 
-    progressStreamHandler.add(id, args);
+    if (progressBatcher.isEnabled()) {
+      progressBatcher.add(id, args);
+    } else {
+      progressStreamHandler.add(id, args);
+    }
   }
 
   @Override
@@ -131,7 +183,8 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
       int statusCode,
       String code,
       String message,
-      @Nullable String[] details) {
+      @Nullable String[] details,
+      @Nullable Map<String, Object> metrics) {
     Map<String, Object> args = new HashMap<>();
     args.put("taskId", id);
     args.put("status", status);
@@ -143,8 +196,12 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
         details != null
             ? new ArrayList<>(Arrays.asList(details))
             : Collections.<String>emptyList());
+    args.put("metrics", metrics);
 
-    resultStreamHandler.add(id, args);
+    progressBatcher.remove(id);
+    progressStreamHandler.remove(id);
+    addResult(id, args, true);
+    addMetrics(id, metrics);
   }
 
   @Override
@@ -153,20 +210,53 @@ public class FlutterUploaderPlugin implements FlutterPlugin, StatusListener {
       int status,
       int statusCode,
       String response,
-      @Nullable Map<String, String> headers) {
+      @Nullable Map<String, String> headers,
+      @Nullable Map<String, Object> metrics) {
     Map<String, Object> args = new HashMap<>();
     args.put("taskId", id);
     args.put("status", status);
     args.put("statusCode", statusCode);
     args.put("message", response);
     args.put("headers", headers != null ? headers : Collections.<String, Object>emptyMap());
+    args.put("metrics", metrics);
 
-    resultStreamHandler.add(id, args);
+    progressBatcher.remove(id);
+    progressStreamHandler.remove(id);
+    addResult(id, args, true);
+    addMetrics(id, metrics);
   }
 
   @Override
   public void onWorkPruned() {
+    progressBatcher.clear();
+    resultBatcher.clear();
+    metricsBatcher.clear();
     progressStreamHandler.clear();
     resultStreamHandler.clear();
+    metricsStreamHandler.clear();
+  }
+
+  private void addResult(String id, Map<String, Object> args, boolean terminal) {
+    if (resultBatcher.isEnabled()) {
+      resultBatcher.add(id, args, terminal);
+    } else {
+      resultStreamHandler.add(id, args, terminal);
+    }
+  }
+
+  /** Publishes the network timings of a finished upload, if it made any requests. */
+  private void addMetrics(String id, @Nullable Map<String, Object> metrics) {
+    if (metrics == null) {
+      return;
+    }
+
+    Map<String, Object> args = new HashMap<>(metrics);
+    args.put("taskId", id);
+
+    if (metricsBatcher.isEnabled()) {
+      metricsBatcher.add(id, args, true);
+    } else {
+      metricsStreamHandler.add(id, args, true);
+    }
   }
 }
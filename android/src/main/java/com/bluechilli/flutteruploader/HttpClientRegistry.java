@@ -0,0 +1,142 @@
+package com.bluechilli.flutteruploader;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Process-wide registry of {@link OkHttpClient} instances used by the upload workers.
+ *
+ * <p>All clients are derived from a single base client and therefore share the connection pool,
+ * dispatcher and TLS session cache. Uploads to the same host reuse connections (and HTTP/2
+ * streams) instead of paying a full handshake per file.
+ *
+ * <p>Clients may use a larger socket send buffer than the system default, which lets fast links
+ * keep more data in flight per write.
+ */
+public class HttpClientRegistry {
+  private static final int MAX_IDLE_CONNECTIONS = 5;
+  private static final long KEEP_ALIVE_DURATION_MINUTES = 5;
+  /** Upper bound for concurrent asynchronous calls per host, e.g. parallel parts of a file. */
+  public static final int MAX_REQUESTS_PER_HOST = 16;
+
+  private static OkHttpClient baseClient = null;
+  private static final Map<ClientKey, OkHttpClient> clients = new HashMap<>();
+
+  /**
+   * Returns the client for the given transport settings.
+   *
+   * @param sendBufferSize socket send buffer size in bytes, 0 = system default.
+   */
+  public static synchronized OkHttpClient getClient(int timeout, int sendBufferSize) {
+    final ClientKey key = new ClientKey(timeout, sendBufferSize);
+
+    OkHttpClient client = clients.get(key);
+    if (client == null) {
+      OkHttpClient.Builder builder =
+          getBaseClient()
+              .newBuilder()
+              .connectTimeout((long) timeout, TimeUnit.SECONDS)
+              .writeTimeout((long) timeout, TimeUnit.SECONDS)
+              .readTimeout((long) timeout, TimeUnit.SECONDS);
+      if (sendBufferSize > 0) {
+        builder.socketFactory(new SendBufferSocketFactory(sendBufferSize));
+      }
+      client = builder.build();
+      clients.put(key, client);
+    }
+
+    return client;
+  }
+
+  private static OkHttpClient getBaseClient() {
+    if (baseClient == null) {
+      Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+      baseClient =
+          new OkHttpClient.Builder()
+              .dispatcher(dispatcher)
+              .eventListenerFactory(UploadMetrics.FACTORY)
+              .connectionPool(
+                  new ConnectionPool(
+                      MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MINUTES, TimeUnit.MINUTES))
+              .build();
+    }
+    return baseClient;
+  }
+
+  /** Transport settings which require a dedicated client instance. */
+  private static class ClientKey {
+    private final int timeout;
+    private final int sendBufferSize;
+
+    ClientKey(int timeout, int sendBufferSize) {
+      this.timeout = timeout;
+      this.sendBufferSize = sendBufferSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      ClientKey clientKey = (ClientKey) o;
+      return timeout == clientKey.timeout && sendBufferSize == clientKey.sendBufferSize;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * timeout + sendBufferSize;
+    }
+  }
+
+  /** Creates sockets with a fixed send buffer size, set before they connect. */
+  private static class SendBufferSocketFactory extends SocketFactory {
+    private final SocketFactory delegate = SocketFactory.getDefault();
+    private final int sendBufferSize;
+
+    SendBufferSocketFactory(int sendBufferSize) {
+      this.sendBufferSize = sendBufferSize;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      return configure(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      return configure(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+        throws IOException {
+      return configure(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+      return configure(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(
+        InetAddress address, int port, InetAddress localAddress, int localPort)
+        throws IOException {
+      return configure(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket configure(Socket socket) throws IOException {
+      socket.setSendBufferSize(sendBufferSize);
+      return socket;
+    }
+  }
+}
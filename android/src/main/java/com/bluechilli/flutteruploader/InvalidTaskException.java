@@ -0,0 +1,30 @@
+package com.bluechilli.flutteruploader;
+
+/** A task descriptor which was rejected before anything got enqueued. */
+class InvalidTaskException extends Exception {
+  private final String code;
+  private final int index;
+
+  InvalidTaskException(String code, String message) {
+    this(code, message, -1);
+  }
+
+  InvalidTaskException(String code, String message, int index) {
+    super(message);
+    this.code = code;
+    this.index = index;
+  }
+
+  String getCode() {
+    return code;
+  }
+
+  /** The position of the rejected task within a bulk enqueue, or -1. */
+  int getIndex() {
+    return index;
+  }
+
+  InvalidTaskException withIndex(int index) {
+    return new InvalidTaskException(code, getMessage(), index);
+  }
+}
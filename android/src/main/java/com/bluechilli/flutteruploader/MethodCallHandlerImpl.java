@@ -1,6 +1,7 @@
 package com.bluechilli.flutteruploader;
 
 import android.content.Context;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.work.BackoffPolicy;
@@ -8,20 +9,28 @@ import androidx.work.Constraints;
 import androidx.work.Data;
 import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
+import androidx.work.Operation;
+import androidx.work.WorkInfo;
 import androidx.work.WorkManager;
 import androidx.work.WorkRequest;
+import com.bluechilli.flutteruploader.plugin.EventBatcher;
 import com.bluechilli.flutteruploader.plugin.StatusListener;
-import com.google.gson.Gson;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -37,16 +46,34 @@ public class MethodCallHandlerImpl implements MethodCallHandler {
 
   @NonNull private final StatusListener statusListener;
 
+  @NonNull private final EventBatcher<Map<String, Object>> progressBatcher;
+
   private final Executor workManagerExecutor = Executors.newSingleThreadExecutor();
   private final Executor mainExecutor;
+  private final TaskPreparer taskPreparer;
+
+  private static final String TAG = "MethodCallHandlerImpl";
 
   private static final List<String> VALID_HTTP_METHODS = Arrays.asList("POST", "PUT", "PATCH");
 
-  MethodCallHandlerImpl(Context context, int timeout, @NonNull StatusListener listener) {
+  /**
+   * Task payloads are stored by {@link TaskManifestStore} once the input data would take more
+   * bytes than this, well below the 10 KB limit of WorkManager {@code Data}.
+   */
+  private static final int MAX_INLINE_DATA_SIZE = 4 * 1024;
+
+  MethodCallHandlerImpl(
+      Context context,
+      int timeout,
+      @NonNull StatusListener listener,
+      @NonNull EventBatcher<Map<String, Object>> progressBatcher) {
     mainExecutor = ContextCompat.getMainExecutor(context);
     this.context = context;
     this.connectionTimeout = timeout;
     this.statusListener = listener;
+    this.progressBatcher = progressBatcher;
+    this.taskPreparer =
+        new TaskPreparer(context, UploadScheduler.getInstance(context).getExecutorService());
   }
 
   @Override
@@ -56,10 +83,16 @@ public class MethodCallHandlerImpl implements MethodCallHandler {
         setBackgroundHandler(call, result);
         break;
       case "enqueue":
-        enqueue(call, result);
+        enqueue(call, result, false);
         break;
       case "enqueueBinary":
-        enqueueBinary(call, result);
+        enqueue(call, result, true);
+        break;
+      case "enqueueAll":
+        enqueueAll(call, result, false);
+        break;
+      case "enqueueBinaryAll":
+        enqueueAll(call, result, true);
         break;
       case "cancel":
         cancel(call, result);
@@ -70,6 +103,21 @@ public class MethodCallHandlerImpl implements MethodCallHandler {
       case "clearUploads":
         clearUploads(call, result);
         break;
+      case "setProgressBatching":
+        setProgressBatching(call, result);
+        break;
+      case "setMaxConcurrentTasks":
+        setMaxConcurrentTasks(call, result);
+        break;
+      case "setBandwidthLimit":
+        setBandwidthLimit(call, result);
+        break;
+      case "setAdaptiveConcurrency":
+        setAdaptiveConcurrency(call, result);
+        break;
+      case "getSchedulerStats":
+        getSchedulerStats(call, result);
+        break;
       default:
         result.notImplemented();
         break;
@@ -85,101 +133,252 @@ public class MethodCallHandlerImpl implements MethodCallHandler {
     result.success(null);
   }
 
-  private void enqueue(MethodCall call, MethodChannel.Result result) {
-    String url = call.argument("url");
-    String method = call.argument("method");
-    List<Map<String, String>> files = call.argument("files");
-    Map<String, String> parameters = call.argument("data");
-    Map<String, String> headers = call.argument("headers");
-    String tag = call.argument("tag");
-
-    if (method == null) {
-      method = "POST";
+  private void enqueue(MethodCall call, MethodChannel.Result result, boolean binary) {
+    UploadTask task;
+    try {
+      task = parseTask(call.arguments(), binary);
+    } catch (InvalidTaskException e) {
+      reportInvalidTask(result, e, true);
+      return;
     }
 
-    if (files == null || files.isEmpty()) {
+    enqueueTasks(Collections.singletonList(task), result, true);
+  }
+
+  /**
+   * Enqueues a list of task descriptors in a single {@link WorkManager} transaction. All
+   * descriptors are validated up front, so either every task is enqueued or none is.
+   *
+   * <p>A descriptor may carry a {@code binary} flag, so multipart and raw uploads can be mixed in
+   * one list. Descriptors without it fall back to {@code binary}, as implied by the method name.
+   */
+  private void enqueueAll(MethodCall call, MethodChannel.Result result, boolean binary) {
+    List<Map<String, Object>> uploads = call.argument("uploads");
+
+    if (uploads == null) {
       result.error("invalid_call", "Invalid call parameters passed", null);
       return;
     }
 
-    if (!VALID_HTTP_METHODS.contains(method.toUpperCase())) {
-      result.error("invalid_method", "Method must be either POST | PUT | PATCH", null);
+    if (uploads.isEmpty()) {
+      result.success(Collections.emptyList());
       return;
     }
 
+    List<UploadTask> tasks = new ArrayList<>(uploads.size());
+    for (int i = 0; i < uploads.size(); i++) {
+      try {
+        Map<String, Object> upload = uploads.get(i);
+        Object flag = upload != null ? upload.get("binary") : null;
+        tasks.add(parseTask(upload, flag instanceof Boolean ? (Boolean) flag : binary));
+      } catch (InvalidTaskException e) {
+        reportInvalidTask(result, e.withIndex(i), false);
+        return;
+      }
+    }
+
+    enqueueTasks(tasks, result, false);
+  }
+
+  /** Prepares the files of {@code tasks} off the main thread, then enqueues them all at once. */
+  private void enqueueTasks(List<UploadTask> tasks, MethodChannel.Result result, boolean single) {
+    workManagerExecutor.execute(
+        () -> {
+          List<WorkRequest> requests = new ArrayList<>(tasks.size());
+          try {
+            taskPreparer.prepare(tasks);
+            for (UploadTask task : tasks) {
+              requests.add(buildRequest(task));
+            }
+            enqueueRequests(requests, orderByPriority(tasks, requests), result, single);
+          } catch (InvalidTaskException e) {
+            mainExecutor.execute(() -> reportInvalidTask(result, e, single));
+          } catch (IOException e) {
+            mainExecutor.execute(() -> result.error("manifest_error", e.getMessage(), null));
+          } catch (RuntimeException e) {
+            // E.g. inputs which still exceed the Data limit, the call must be answered anyway.
+            Log.e(TAG, "Unable to enqueue the uploads", e);
+            mainExecutor.execute(() -> result.error("enqueue_error", e.toString(), null));
+          }
+        });
+  }
+
+  /**
+   * Returns {@code requests} with the requests of higher priority tasks first, otherwise in their
+   * original order.
+   *
+   * <p>{@link WorkManager} only hands a limited number of requests to the system scheduler and
+   * starts them roughly in the order they were enqueued. The lanes of {@link UploadScheduler} can
+   * only reorder workers which were started, so within a batch the higher priorities are enqueued
+   * first. Requests enqueued by earlier calls are not overtaken until they are started.
+   */
+  private static List<WorkRequest> orderByPriority(
+      List<UploadTask> tasks, List<WorkRequest> requests) {
+    List<WorkRequest> ordered = new ArrayList<>(requests.size());
+    for (int priority = UploadPriority.HIGH; priority >= UploadPriority.LOW; priority--) {
+      for (int i = 0; i < tasks.size(); i++) {
+        if (tasks.get(i).getPriority() == priority) {
+          ordered.add(requests.get(i));
+        }
+      }
+    }
+    return ordered;
+  }
+
+  private static void reportInvalidTask(
+      MethodChannel.Result result, InvalidTaskException e, boolean single) {
+    if (single || e.getIndex() < 0) {
+      result.error(e.getCode(), e.getMessage(), null);
+    } else {
+      result.error(e.getCode(), "Upload " + e.getIndex() + ": " + e.getMessage(), e.getIndex());
+    }
+  }
+
+  /**
+   * Enqueues {@code ordered}, a permutation of {@code requests}, and reports the task ids in the
+   * order of {@code requests}.
+   */
+  private void enqueueRequests(
+      List<WorkRequest> requests,
+      List<WorkRequest> ordered,
+      MethodChannel.Result result,
+      boolean single) {
+    ListenableFuture<Operation.State.SUCCESS> operation =
+        WorkManager.getInstance(context).enqueue(ordered).getResult();
+    operation.addListener(
+        () -> {
+          try {
+            operation.get();
+          } catch (ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Unable to enqueue the uploads", e);
+            mainExecutor.execute(() -> result.error("enqueue_error", e.toString(), null));
+            return;
+          }
+
+          List<String> taskIds = new ArrayList<>(requests.size());
+          for (WorkRequest request : requests) {
+            taskIds.add(request.getId().toString());
+          }
+          mainExecutor.execute(
+              () -> {
+                // Start the background handler before the first upload needs it.
+                BackgroundEngineManager.getInstance(context).prewarm();
+                result.success(single ? taskIds.get(0) : taskIds);
+                for (String taskId : taskIds) {
+                  statusListener.onUpdateProgress(taskId, UploadStatus.ENQUEUED, 0);
+                }
+              });
+        },
+        workManagerExecutor);
+  }
+
+  private UploadTask parseTask(Map<String, Object> args, boolean binary)
+      throws InvalidTaskException {
+    if (args == null) {
+      throw new InvalidTaskException("invalid_call", "Invalid call parameters passed");
+    }
+
+    UploadTask task = binary ? parseBinaryTask(args) : parseMultipartTask(args);
+    return task.setPriority(parsePriority(args))
+        .setCompression(parseCompression(args))
+        .setDeduplicate(Boolean.TRUE.equals(args.get("deduplicate")))
+        .setDedupCheckUrl((String) args.get("dedupCheckUrl"));
+  }
+
+  @SuppressWarnings("unchecked")
+  private UploadTask parseMultipartTask(Map<String, Object> args) throws InvalidTaskException {
+    String url = (String) args.get("url");
+    String method = parseMethod(args);
+    List<Map<String, String>> files = (List<Map<String, String>>) args.get("files");
+    Map<String, String> parameters = (Map<String, String>) args.get("data");
+    Map<String, String> headers = (Map<String, String>) args.get("headers");
+    String tag = (String) args.get("tag");
+
+    if (files == null || files.isEmpty()) {
+      throw new InvalidTaskException("invalid_call", "Invalid call parameters passed");
+    }
+
     List<FileItem> items = new ArrayList<>();
 
     for (Map<String, String> file : files) {
       items.add(FileItem.fromJson(file));
     }
 
-    WorkRequest request =
-        buildRequest(
-            new UploadTask(url, method, items, headers, parameters, connectionTimeout, false, tag));
-    WorkManager.getInstance(context)
-        .enqueue(request)
-        .getResult()
-        .addListener(
-            () -> {
-              String taskId = request.getId().toString();
-              mainExecutor.execute(
-                  () -> {
-                    result.success(taskId);
-                    statusListener.onUpdateProgress(taskId, UploadStatus.ENQUEUED, 0);
-                  });
-            },
-            workManagerExecutor);
+    return new UploadTask(url, method, items, headers, parameters, connectionTimeout, false, tag);
   }
 
-  private void enqueueBinary(MethodCall call, MethodChannel.Result result) {
-    String url = call.argument("url");
-    String method = call.argument("method");
-    String path = call.argument("path");
-    Map<String, String> headers = call.argument("headers");
-    String tag = call.argument("tag");
+  @SuppressWarnings("unchecked")
+  private UploadTask parseBinaryTask(Map<String, Object> args) throws InvalidTaskException {
+    String url = (String) args.get("url");
+    String method = parseMethod(args);
+    String path = (String) args.get("path");
+    Map<String, String> headers = (Map<String, String>) args.get("headers");
+    String tag = (String) args.get("tag");
+    Number chunkSize = (Number) args.get("chunkSize");
+    Integer parallelParts = (Integer) args.get("parallelParts");
+    String completeUrl = (String) args.get("completeUrl");
 
-    if (method == null) {
-      method = "POST";
+    if (path == null) {
+      throw new InvalidTaskException("invalid_call", "Invalid call parameters passed");
     }
 
-    if (path == null) {
-      result.error("invalid_call", "Invalid call parameters passed", null);
-      return;
+    return new UploadTask(
+            url,
+            method,
+            Collections.singletonList(new FileItem(path)),
+            headers,
+            Collections.emptyMap(),
+            connectionTimeout,
+            true,
+            tag)
+        .setChunkSize(chunkSize != null ? chunkSize.longValue() : 0)
+        .setParallelParts(parallelParts != null ? parallelParts : 0)
+        .setCompleteUrl(completeUrl);
+  }
+
+  private static int parsePriority(Map<String, Object> args) throws InvalidTaskException {
+    String name = (String) args.get("priority");
+
+    if (name == null) {
+      return UploadPriority.NORMAL;
+    }
+
+    int priority = UploadPriority.fromName(name);
+    if (priority < 0) {
+      throw new InvalidTaskException("invalid_priority", "Priority must be low | normal | high");
+    }
+
+    return priority;
+  }
+
+  private static String parseCompression(Map<String, Object> args) throws InvalidTaskException {
+    String compression = (String) args.get("compression");
+
+    if (compression != null && !CompressedRequestBody.isSupported(compression)) {
+      throw new InvalidTaskException(
+          "invalid_compression", "Compression must be either gzip | deflate");
+    }
+
+    return compression;
+  }
+
+  private static String parseMethod(Map<String, Object> args) throws InvalidTaskException {
+    String method = (String) args.get("method");
+
+    if (method == null) {
+      method = "POST";
     }
 
     if (!VALID_HTTP_METHODS.contains(method.toUpperCase())) {
-      result.error("invalid_method", "Method must be either POST | PUT | PATCH", null);
-      return;
+      throw new InvalidTaskException("invalid_method", "Method must be either POST | PUT | PATCH");
     }
 
-    WorkRequest request =
-        buildRequest(
-            new UploadTask(
-                url,
-                method,
-                Collections.singletonList(new FileItem(path)),
-                headers,
-                Collections.emptyMap(),
-                connectionTimeout,
-                true,
-                tag));
-    WorkManager.getInstance(context)
-        .enqueue(request)
-        .getResult()
-        .addListener(
-            () -> {
-              String taskId = request.getId().toString();
-              mainExecutor.execute(
-                  () -> {
-                    result.success(taskId);
-                    statusListener.onUpdateProgress(taskId, UploadStatus.ENQUEUED, 0);
-                  });
-            },
-            workManagerExecutor);
+    return method;
   }
 
   private void cancel(MethodCall call, MethodChannel.Result result) {
     String taskId = call.argument("taskId");
+    SharedPreferenceHelper.clearUploadOffset(context, taskId);
     WorkManager.getInstance(context)
         .cancelWorkById(UUID.fromString(taskId))
         .getResult()
@@ -187,6 +386,7 @@ public class MethodCallHandlerImpl implements MethodCallHandler {
   }
 
   private void cancelAll(MethodCall call, MethodChannel.Result result) {
+    SharedPreferenceHelper.clearUploadOffsets(context);
     WorkManager.getInstance(context)
         .cancelAllWorkByTag(FLUTTER_UPLOAD_WORK_TAG)
         .getResult()
@@ -199,44 +399,155 @@ public class MethodCallHandlerImpl implements MethodCallHandler {
         .getResult()
         .addListener(
             () -> {
-              statusListener.onWorkPruned();
-              mainExecutor.execute(() -> result.success(null));
+              pruneTaskManifests();
+              mainExecutor.execute(
+                  () -> {
+                    statusListener.onWorkPruned();
+                    result.success(null);
+                  });
             },
             workManagerExecutor);
   }
 
-  private WorkRequest buildRequest(UploadTask task) {
-    Gson gson = new Gson();
+  /** Removes the manifests of all tasks which are no longer pending. */
+  private void pruneTaskManifests() {
+    try {
+      List<WorkInfo> workInfos =
+          WorkManager.getInstance(context).getWorkInfosByTag(FLUTTER_UPLOAD_WORK_TAG).get();
+
+      Set<String> activeIds = new HashSet<>();
+      for (WorkInfo info : workInfos) {
+        String manifestId = TaskManifestStore.getManifestId(info.getTags());
+        if (manifestId != null && !info.getState().isFinished()) {
+          activeIds.add(manifestId);
+        }
+      }
+
+      TaskManifestStore.prune(context, activeIds);
+    } catch (ExecutionException | InterruptedException e) {
+      Log.e(TAG, "Unable to prune task manifests", e);
+    }
+  }
+
+  private void setProgressBatching(MethodCall call, MethodChannel.Result result) {
+    Integer windowMillis = call.argument("windowMillis");
+    progressBatcher.setWindow(windowMillis != null ? windowMillis : 0);
+
+    result.success(null);
+  }
 
+  private void setMaxConcurrentTasks(MethodCall call, MethodChannel.Result result) {
+    Integer maxConcurrentTasks = call.argument("maxConcurrentTasks");
+    Integer maxConcurrentTasksPerHost = call.argument("maxConcurrentTasksPerHost");
+
+    if (maxConcurrentTasks == null || maxConcurrentTasks < 1) {
+      result.error("invalid_call", "maxConcurrentTasks must be at least 1", null);
+      return;
+    }
+
+    if (maxConcurrentTasksPerHost != null && maxConcurrentTasksPerHost < 0) {
+      result.error("invalid_call", "maxConcurrentTasksPerHost must not be negative", null);
+      return;
+    }
+
+    if (maxConcurrentTasksPerHost != null) {
+      UploadScheduler.getInstance(context).setMaxConcurrentTasksPerHost(maxConcurrentTasksPerHost);
+    }
+    // Becomes the ceiling of the adaptive limit while adaptive concurrency is enabled.
+    AdaptiveConcurrencyController.getInstance(context).setMaxConcurrentTasks(maxConcurrentTasks);
+    result.success(null);
+  }
+
+  private void setAdaptiveConcurrency(MethodCall call, MethodChannel.Result result) {
+    Boolean enabled = call.argument("enabled");
+    AdaptiveConcurrencyController.getInstance(context).setEnabled(Boolean.TRUE.equals(enabled));
+
+    result.success(null);
+  }
+
+  private void getSchedulerStats(MethodCall call, MethodChannel.Result result) {
+    Map<String, Object> stats = UploadScheduler.getInstance(context).getStats();
+    stats.putAll(AdaptiveConcurrencyController.getInstance(context).getStats());
+    stats.putAll(BackgroundEngineManager.getInstance(context).getStats());
+
+    result.success(stats);
+  }
+
+  private void setBandwidthLimit(MethodCall call, MethodChannel.Result result) {
+    Number bytesPerSecond = call.argument("bytesPerSecond");
+    long limit = bytesPerSecond != null ? bytesPerSecond.longValue() : 0;
+
+    if (limit < 0) {
+      result.error("invalid_call", "bytesPerSecond must not be negative", null);
+      return;
+    }
+
+    BandwidthAllocator.getInstance().setBytesPerSecond(limit);
+    result.success(null);
+  }
+
+  private WorkRequest buildRequest(UploadTask task) throws IOException {
     Data.Builder dataBuilder =
         new Data.Builder()
             .putString(UploadWorker.ARG_URL, task.getURL())
             .putString(UploadWorker.ARG_METHOD, task.getMethod())
             .putInt(UploadWorker.ARG_REQUEST_TIMEOUT, task.getTimeout())
             .putBoolean(UploadWorker.ARG_BINARY_UPLOAD, task.isBinaryUpload())
+            .putLong(UploadWorker.ARG_CHUNK_SIZE, task.getChunkSize())
+            .putInt(UploadWorker.ARG_PARALLEL_PARTS, task.getParallelParts())
+            .putString(UploadWorker.ARG_COMPLETE_URL, task.getCompleteUrl())
+            .putInt(UploadWorker.ARG_PRIORITY, task.getPriority())
+            .putString(UploadWorker.ARG_COMPRESSION, task.getCompression())
+            .putBoolean(UploadWorker.ARG_DEDUPLICATE, task.isDeduplicate())
+            .putString(UploadWorker.ARG_DEDUP_CHECK_URL, task.getDedupCheckUrl())
             .putString(UploadWorker.ARG_UPLOAD_REQUEST_TAG, task.getTag());
 
-    List<FileItem> files = task.getFiles();
+    OneTimeWorkRequest.Builder requestBuilder =
+        new OneTimeWorkRequest.Builder(UploadWorker.class)
+            .setConstraints(
+                new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+            .addTag(FLUTTER_UPLOAD_WORK_TAG)
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 5, TimeUnit.SECONDS);
 
-    String fileItemsJson = gson.toJson(files);
-    dataBuilder.putString(UploadWorker.ARG_FILES, fileItemsJson);
+    Map<String, String> payload = new HashMap<>();
+    payload.put(UploadWorker.ARG_FILES, TaskCodec.encode(TaskCodec.FILE_ITEMS, task.getFiles()));
 
     if (task.getHeaders() != null) {
-      String headersJson = gson.toJson(task.getHeaders());
-      dataBuilder.putString(UploadWorker.ARG_HEADERS, headersJson);
+      payload.put(
+          UploadWorker.ARG_HEADERS, TaskCodec.encode(TaskCodec.STRING_MAP, task.getHeaders()));
     }
 
     if (task.getParameters() != null) {
-      String parametersJson = gson.toJson(task.getParameters());
-      dataBuilder.putString(UploadWorker.ARG_DATA, parametersJson);
+      payload.put(
+          UploadWorker.ARG_DATA, TaskCodec.encode(TaskCodec.STRING_MAP, task.getParameters()));
+    }
+
+    Data fields = dataBuilder.build();
+    Data inputData = null;
+
+    if (TaskManifestStore.getStoredSize(fields.getKeyValueMap())
+            + TaskManifestStore.getStoredSize(payload)
+        <= MAX_INLINE_DATA_SIZE) {
+      try {
+        inputData =
+            new Data.Builder().putAll(fields).putAll(new HashMap<String, Object>(payload)).build();
+      } catch (IllegalStateException e) {
+        // Exceeds the Data limit after all, including the serialisation overhead.
+        Log.d(TAG, "Task inputs exceed the Data limit, storing them in a manifest");
+      }
+    }
+
+    if (inputData == null) {
+      // Too large for WorkManager Data, the worker loads it from disk instead.
+      String manifestId = TaskManifestStore.write(context, payload);
+      inputData =
+          new Data.Builder()
+              .putAll(fields)
+              .putString(UploadWorker.ARG_MANIFEST_ID, manifestId)
+              .build();
+      requestBuilder.addTag(TaskManifestStore.getTag(manifestId));
     }
 
-    return new OneTimeWorkRequest.Builder(UploadWorker.class)
-        .setConstraints(
-            new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
-        .addTag(FLUTTER_UPLOAD_WORK_TAG)
-        .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 5, TimeUnit.SECONDS)
-        .setInputData(dataBuilder.build())
-        .build();
+    return requestBuilder.setInputData(inputData).build();
   }
 }
@@ -0,0 +1,39 @@
+package com.bluechilli.flutteruploader;
+
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Mime type lookups by file extension, memoised as most uploads share a few extensions. */
+public class MimeTypes {
+  public static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+  private static final String TAG = "MimeTypes";
+  private static final Map<String, String> mimeTypesByExtension = new ConcurrentHashMap<>();
+
+  public static String fromPath(String path) {
+    try {
+      String extension = MimeTypeMap.getFileExtensionFromUrl(path);
+      if (extension == null || extension.isEmpty()) {
+        return DEFAULT_MIME_TYPE;
+      }
+
+      extension = extension.toLowerCase();
+      String cached = mimeTypesByExtension.get(extension);
+      if (cached != null) {
+        return cached;
+      }
+
+      String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+      if (mimeType == null || mimeType.isEmpty()) {
+        mimeType = DEFAULT_MIME_TYPE;
+      }
+      mimeTypesByExtension.put(extension, mimeType);
+      return mimeType;
+    } catch (Exception ex) {
+      Log.d(TAG, "Unable to determine the mime type of " + path, ex);
+      return DEFAULT_MIME_TYPE;
+    }
+  }
+}
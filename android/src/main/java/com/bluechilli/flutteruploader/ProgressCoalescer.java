@@ -0,0 +1,61 @@
+package com.bluechilli.flutteruploader;
+
+/**
+ * Rate-limits progress updates of a single upload. An update is only emitted when the rounded
+ * percentage changes, at least {@code minIntervalMillis} passed since the previous update and
+ * either {@code minStepPercent} or {@code minStepBytes} have been made. Completion (100%) is always
+ * emitted.
+ */
+public class ProgressCoalescer {
+  /** Returned by {@link #onProgress} when the update should be dropped. */
+  public static final int SKIP = -1;
+
+  private final long minIntervalMillis;
+  private final int minStepPercent;
+  private final long minStepBytes;
+
+  private int lastProgress = SKIP;
+  private long lastBytesWritten;
+  private long lastEmitTime;
+
+  public ProgressCoalescer(long minIntervalMillis, int minStepPercent, long minStepBytes) {
+    this.minIntervalMillis = minIntervalMillis;
+    this.minStepPercent = minStepPercent;
+    this.minStepBytes = minStepBytes;
+  }
+
+  /**
+   * @return the rounded progress (0 - 100) to emit, or {@link #SKIP}.
+   */
+  public synchronized int onProgress(long bytesWritten, long contentLength, long now) {
+    int progress = 0;
+    if (contentLength > 0) {
+      progress = (int) Math.round(((double) bytesWritten / (double) contentLength) * 100);
+      progress = Math.max(0, Math.min(100, progress));
+    }
+
+    if (progress == lastProgress) {
+      return SKIP;
+    }
+
+    final boolean complete = progress == 100;
+    if (!complete && lastProgress != SKIP) {
+      if (now - lastEmitTime < minIntervalMillis) {
+        return SKIP;
+      }
+
+      final boolean percentStep = Math.abs(progress - lastProgress) >= minStepPercent;
+      final boolean bytesStep =
+          minStepBytes > 0 && Math.abs(bytesWritten - lastBytesWritten) >= minStepBytes;
+      if (!percentStep && !bytesStep) {
+        return SKIP;
+      }
+    }
+
+    lastProgress = progress;
+    lastBytesWritten = bytesWritten;
+    lastEmitTime = now;
+
+    return progress;
+  }
+}
@@ -7,6 +7,8 @@ public class SharedPreferenceHelper {
   private static final String SHARED_PREFS_FILE_NAME = "flutter_uploader_plugin";
   private static final String CALLBACK_DISPATCHER_HANDLE_KEY =
       "com.bluechilli.flutteruploader.CALLBACK_DISPATCHER_HANDLE_KEY";
+  private static final String UPLOAD_OFFSET_KEY_PREFIX =
+      "com.bluechilli.flutteruploader.UPLOAD_OFFSET_";
 
   public static SharedPreferences get(Context context) {
     return context.getSharedPreferences(SHARED_PREFS_FILE_NAME, Context.MODE_PRIVATE);
@@ -23,4 +25,27 @@ public class SharedPreferenceHelper {
   public static boolean hasCallbackHandle(Context context) {
     return get(context).contains(CALLBACK_DISPATCHER_HANDLE_KEY);
   }
+
+  public static void saveUploadOffset(Context context, String taskId, long offset) {
+    get(context).edit().putLong(UPLOAD_OFFSET_KEY_PREFIX + taskId, offset).commit();
+  }
+
+  public static long getUploadOffset(Context context, String taskId) {
+    return get(context).getLong(UPLOAD_OFFSET_KEY_PREFIX + taskId, 0L);
+  }
+
+  public static void clearUploadOffset(Context context, String taskId) {
+    get(context).edit().remove(UPLOAD_OFFSET_KEY_PREFIX + taskId).apply();
+  }
+
+  public static void clearUploadOffsets(Context context) {
+    SharedPreferences preferences = get(context);
+    SharedPreferences.Editor editor = preferences.edit();
+    for (String key : preferences.getAll().keySet()) {
+      if (key.startsWith(UPLOAD_OFFSET_KEY_PREFIX)) {
+        editor.remove(key);
+      }
+    }
+    editor.apply();
+  }
 }
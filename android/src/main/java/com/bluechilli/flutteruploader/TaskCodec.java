@@ -0,0 +1,204 @@
+package com.bluechilli.flutteruploader;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, reflection-free encoding of task descriptors and results stored in WorkManager {@code
+ * Data}.
+ *
+ * <p>Values are written as a version marker followed by length-prefixed strings, as a single
+ * string: {@code Data} serialises {@code byte[]} values as boxed {@code Byte[]} (roughly 5 bytes
+ * per byte) and strings as modified UTF-8. Lengths are varints of 5-bit groups written as
+ * printable ASCII characters, strings are written as is, so an encoded value is stored in about
+ * the size of its UTF-8 representation.
+ *
+ * <p>Version 2 added the size and mime type of file items. Versions 1 and 2 stored UTF-8 bytes as
+ * an ISO-8859-1 string, which doubled the size of non-ASCII text once stored. Values of all
+ * versions are read.
+ */
+public final class TaskCodec {
+  private static final char VERSION = 3;
+  private static final char MIN_VERSION = 1;
+  /** The last version which stored its bytes as an ISO-8859-1 string. */
+  static final int LAST_BYTE_VERSION = 2;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  /** Writes and reads a single value type, without reflection. */
+  public interface Adapter<T> {
+    void write(Writer writer, T value);
+
+    T read(Reader reader);
+  }
+
+  public static final Adapter<List<FileItem>> FILE_ITEMS =
+      new Adapter<List<FileItem>>() {
+        @Override
+        public void write(Writer writer, List<FileItem> value) {
+          writer.writeVarint(value.size());
+          for (FileItem item : value) {
+            writer.writeString(item.getPath());
+            writer.writeString(item.getFieldname());
+            // Shifted by one, so that an unknown size is still a small positive number.
+            writer.writeVarlong(item.getSize() + 1);
+            writer.writeString(item.getMimeType());
+          }
+        }
+
+        @Override
+        public List<FileItem> read(Reader reader) {
+          int size = reader.readVarint();
+          List<FileItem> items = new ArrayList<>(size);
+          for (int i = 0; i < size; i++) {
+            String path = reader.readString();
+            String fieldname = reader.readString();
+            FileItem item = new FileItem(path, fieldname);
+            if (reader.getVersion() >= 2) {
+              item.setSize(reader.readVarlong() - 1).setMimeType(reader.readString());
+            }
+            items.add(item);
+          }
+          return items;
+        }
+      };
+
+  public static final Adapter<Map<String, String>> STRING_MAP =
+      new Adapter<Map<String, String>>() {
+        @Override
+        public void write(Writer writer, Map<String, String> value) {
+          writer.writeVarint(value.size());
+          for (Map.Entry<String, String> entry : value.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+          }
+        }
+
+        @Override
+        public Map<String, String> read(Reader reader) {
+          int size = reader.readVarint();
+          Map<String, String> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+          for (int i = 0; i < size; i++) {
+            String key = reader.readString();
+            map.put(key, reader.readString());
+          }
+          return map;
+        }
+      };
+
+  private TaskCodec() {}
+
+  public static <T> String encode(Adapter<T> adapter, T value) {
+    Writer writer = new Writer();
+    adapter.write(writer, value);
+    return writer.toEncodedString();
+  }
+
+  public static <T> T decode(Adapter<T> adapter, String encoded) {
+    if (!isEncoded(encoded)) {
+      throw new IllegalArgumentException("Unsupported encoding");
+    }
+    return adapter.read(new Reader(encoded.charAt(0), encoded));
+  }
+
+  /** Whether the value was written by this codec, rather than e.g. as JSON by earlier versions. */
+  public static boolean isEncoded(String value) {
+    return value != null
+        && !value.isEmpty()
+        && value.charAt(0) >= MIN_VERSION
+        && value.charAt(0) <= VERSION;
+  }
+
+  public static final class Writer {
+    private final StringBuilder builder = new StringBuilder(64).append(VERSION);
+
+    public void writeVarint(int value) {
+      writeVarlong(value & 0xFFFFFFFFL);
+    }
+
+    /** Writes a non-negative long. */
+    public void writeVarlong(long value) {
+      while ((value & ~0x1FL) != 0) {
+        builder.append((char) (0x40 | (value & 0x1F)));
+        value >>>= 5;
+      }
+      builder.append((char) (0x20 | value));
+    }
+
+    /** Writes the length + 1 (0 marks {@code null}) followed by the string. */
+    public void writeString(String value) {
+      if (value == null) {
+        writeVarint(0);
+        return;
+      }
+
+      writeVarint(value.length() + 1);
+      builder.append(value);
+    }
+
+    String toEncodedString() {
+      return builder.toString();
+    }
+  }
+
+  public static final class Reader {
+    private final int version;
+    private final String encoded;
+    private int position = 1;
+
+    Reader(int version, String encoded) {
+      this.version = version;
+      this.encoded = encoded;
+    }
+
+    /** The codec version the value was written with. */
+    public int getVersion() {
+      return version;
+    }
+
+    public int readVarint() {
+      return (int) readVarlong();
+    }
+
+    public long readVarlong() {
+      long value = 0;
+      int shift = 0;
+
+      if (version <= LAST_BYTE_VERSION) {
+        char b;
+        do {
+          b = encoded.charAt(position++);
+          value |= (long) (b & 0x7F) << shift;
+          shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+      }
+
+      char c;
+      do {
+        c = encoded.charAt(position++);
+        value |= (long) (c & 0x1F) << shift;
+        shift += 5;
+      } while (c >= 0x40);
+      return value;
+    }
+
+    public String readString() {
+      int length = readVarint() - 1;
+      if (length < 0) {
+        return null;
+      }
+
+      String value = encoded.substring(position, position + length);
+      position += length;
+
+      if (version <= LAST_BYTE_VERSION) {
+        return new String(value.getBytes(ISO_8859_1), UTF_8);
+      }
+      return value;
+    }
+  }
+}
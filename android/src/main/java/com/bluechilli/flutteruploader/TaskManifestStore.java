@@ -0,0 +1,144 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * File-per-task store for task inputs which are too large for WorkManager {@code Data} (limited to
+ * 10 KB). The work request only carries the manifest id, the worker loads the manifest when it
+ * runs.
+ *
+ * <p>Manifests are deleted once their task has finished and garbage collected when uploads are
+ * cleared, see {@link #prune(Context, Set)}.
+ */
+public class TaskManifestStore {
+  private static final String TAG = "TaskManifestStore";
+  private static final String DIRECTORY = "flutter_uploader/manifests";
+  private static final String MANIFEST_TAG_PREFIX = "flutter_upload_manifest:";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  /** Manifests younger than this are never pruned, their work may not be enqueued yet. */
+  private static final long MIN_AGE_FOR_PRUNING = TimeUnit.MINUTES.toMillis(10);
+
+  public static String write(Context context, Map<String, String> values) throws IOException {
+    final String id = UUID.randomUUID().toString();
+    final File directory = getDirectory(context);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+
+    File tempFile = new File(directory, id + ".tmp");
+    try (BufferedSink sink = Okio.buffer(Okio.sink(tempFile))) {
+      sink.writeString(TaskCodec.encode(TaskCodec.STRING_MAP, values), UTF_8);
+    }
+
+    if (!tempFile.renameTo(new File(directory, id))) {
+      tempFile.delete();
+      throw new IOException("Unable to store manifest " + id);
+    }
+
+    return id;
+  }
+
+  @Nullable
+  public static Map<String, String> read(Context context, String id) {
+    File file = new File(getDirectory(context), id);
+
+    try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+      byte[] bytes = source.readByteArray();
+      // The version marker is the first byte, whichever charset the manifest was written with.
+      Charset charset =
+          bytes.length > 0 && bytes[0] <= TaskCodec.LAST_BYTE_VERSION ? ISO_8859_1 : UTF_8;
+      return TaskCodec.decode(TaskCodec.STRING_MAP, new String(bytes, charset));
+    } catch (IOException | IllegalArgumentException e) {
+      Log.e(TAG, "Unable to read manifest " + id, e);
+      return null;
+    }
+  }
+
+  public static void delete(Context context, String id) {
+    new File(getDirectory(context), id).delete();
+  }
+
+  /** Deletes all manifests which are not referenced by {@code activeIds}. */
+  public static void prune(Context context, Set<String> activeIds) {
+    File[] files = getDirectory(context).listFiles();
+    if (files == null) {
+      return;
+    }
+
+    final long now = System.currentTimeMillis();
+    for (File file : files) {
+      if (activeIds.contains(file.getName())) {
+        continue;
+      }
+
+      if (now - file.lastModified() < MIN_AGE_FOR_PRUNING) {
+        continue;
+      }
+
+      Log.d(TAG, "Pruning manifest " + file.getName());
+      file.delete();
+    }
+  }
+
+  /**
+   * Returns the number of bytes {@code values} take in WorkManager {@code Data}, excluding the
+   * serialisation overhead. {@code Data} stores strings as modified UTF-8, so non-ASCII characters
+   * take two or three bytes each.
+   */
+  public static int getStoredSize(Map<String, ?> values) {
+    int size = 0;
+    for (Map.Entry<String, ?> entry : values.entrySet()) {
+      size += getModifiedUtf8Length(entry.getKey());
+
+      Object value = entry.getValue();
+      if (value instanceof String) {
+        size += getModifiedUtf8Length((String) value);
+      } else if (value != null) {
+        size += 8;
+      }
+    }
+    return size;
+  }
+
+  private static int getModifiedUtf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      length += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    }
+    return length;
+  }
+
+  /** The WorkManager tag which links a work request to its manifest. */
+  public static String getTag(String id) {
+    return MANIFEST_TAG_PREFIX + id;
+  }
+
+  @Nullable
+  public static String getManifestId(Set<String> tags) {
+    for (String tag : tags) {
+      if (tag.startsWith(MANIFEST_TAG_PREFIX)) {
+        return tag.substring(MANIFEST_TAG_PREFIX.length());
+      }
+    }
+    return null;
+  }
+
+  private static File getDirectory(Context context) {
+    return new File(context.getFilesDir(), DIRECTORY);
+  }
+}
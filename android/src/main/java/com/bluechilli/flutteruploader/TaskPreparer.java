@@ -0,0 +1,92 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.Context;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the size and mime type of every file at enqueue time and rejects tasks with missing
+ * files, before they occupy a {@link androidx.work.WorkManager} slot. Files of multi-file and bulk
+ * enqueues are resolved in parallel.
+ */
+class TaskPreparer {
+  private static final int MAX_PARALLELISM = 4;
+
+  private final Context context;
+  private final ExecutorService executorService;
+
+  TaskPreparer(Context context, ExecutorService executorService) {
+    this.context = context;
+    this.executorService = executorService;
+  }
+
+  /**
+   * Prepares the files of all {@code tasks}.
+   *
+   * @throws InvalidTaskException for the first task, in order, with a missing file.
+   */
+  void prepare(List<UploadTask> tasks) throws InvalidTaskException {
+    List<FileItem> items = new ArrayList<>();
+    for (UploadTask task : tasks) {
+      items.addAll(task.getFiles());
+    }
+
+    String[] errors = new String[items.size()];
+    int parallelism = Math.min(MAX_PARALLELISM, items.size());
+
+    if (parallelism <= 1) {
+      prepareItems(context, items, errors, new AtomicInteger());
+    } else {
+      AtomicInteger next = new AtomicInteger();
+      List<Future<?>> futures = new ArrayList<>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        futures.add(executorService.submit(() -> prepareItems(context, items, errors, next)));
+      }
+
+      try {
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (ExecutionException | InterruptedException e) {
+        throw new InvalidTaskException("prepare_error", e.toString());
+      }
+    }
+
+    int position = 0;
+    for (int taskIndex = 0; taskIndex < tasks.size(); taskIndex++) {
+      for (int i = 0; i < tasks.get(taskIndex).getFiles().size(); i++, position++) {
+        if (errors[position] != null) {
+          throw new InvalidTaskException("invalid_files", errors[position], taskIndex);
+        }
+      }
+    }
+  }
+
+  /** Prepares items until all of them are claimed, each one by exactly one thread. */
+  private static void prepareItems(
+      Context context, List<FileItem> items, String[] errors, AtomicInteger next) {
+    int index;
+    while ((index = next.getAndIncrement()) < items.size()) {
+      errors[index] = prepareItem(context, items.get(index));
+    }
+  }
+
+  /** Returns the reason why the item can not be uploaded, or null. */
+  private static String prepareItem(Context context, FileItem item) {
+    if (item.getPath() == null) {
+      return "File path is missing";
+    }
+
+    UploadSource source = UploadSource.of(context, item.getPath());
+    if (!source.exists()) {
+      return "File does not exist: " + item.getPath();
+    }
+
+    item.setSize(source.length()).setMimeType(source.getMimeType());
+    return null;
+  }
+}
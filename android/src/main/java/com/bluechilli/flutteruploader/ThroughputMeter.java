@@ -0,0 +1,23 @@
+package com.bluechilli.flutteruploader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counts the bytes written by all uploads of the process. */
+public class ThroughputMeter {
+  private static final ThroughputMeter instance = new ThroughputMeter();
+
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  public static ThroughputMeter getInstance() {
+    return instance;
+  }
+
+  public void record(long byteCount) {
+    bytesWritten.addAndGet(byteCount);
+  }
+
+  /** Total number of bytes written since the process started. */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+}
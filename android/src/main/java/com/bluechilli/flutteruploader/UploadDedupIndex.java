@@ -0,0 +1,222 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import okhttp3.HttpUrl;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.HashingSink;
+import okio.Okio;
+
+/**
+ * Persistent index of content hashes to the results of previous uploads, keyed by the method and
+ * the normalised URL including its query, so that different endpoints of the same server, or the
+ * same endpoint with different parameters, never share results.
+ *
+ * <p>File hashes are cached by path, size and modification time, so unchanged files are only read
+ * once. The index keeps the {@link #MAX_ENTRIES} most recent results.
+ */
+public class UploadDedupIndex extends SQLiteOpenHelper {
+  private static final String DATABASE_NAME = "flutter_uploader_dedup.db";
+  private static final int DATABASE_VERSION = 3;
+  private static final int MAX_ENTRIES = 10000;
+
+  private static final String TABLE_RESULTS = "results";
+  private static final String TABLE_FILE_HASHES = "file_hashes";
+
+  private static UploadDedupIndex instance = null;
+
+  private final Context context;
+
+  UploadDedupIndex(Context context) {
+    super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    this.context = context;
+  }
+
+  public static synchronized UploadDedupIndex getInstance(Context context) {
+    if (instance == null) {
+      instance = new UploadDedupIndex(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    db.execSQL(
+        "CREATE TABLE "
+            + TABLE_RESULTS
+            + " (method TEXT NOT NULL, url TEXT NOT NULL, hash TEXT NOT NULL,"
+            + " status_code INTEGER NOT NULL, response TEXT, headers TEXT,"
+            + " created_at INTEGER NOT NULL, PRIMARY KEY (method, url, hash))");
+    db.execSQL(
+        "CREATE TABLE "
+            + TABLE_FILE_HASHES
+            + " (path TEXT PRIMARY KEY, size INTEGER NOT NULL, modified INTEGER NOT NULL,"
+            + " hash TEXT NOT NULL)");
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    db.execSQL("DROP TABLE IF EXISTS " + TABLE_RESULTS);
+    db.execSQL("DROP TABLE IF EXISTS " + TABLE_FILE_HASHES);
+    onCreate(db);
+  }
+
+  /**
+   * Hashes the content of an upload: the file itself for binary uploads, otherwise the field
+   * names, file hashes and form parameters.
+   */
+  public String hashContent(
+      List<FileItem> files, @Nullable Map<String, String> parameters, boolean binary)
+      throws IOException {
+    if (binary) {
+      return hashSource(UploadSource.of(context, files.get(0).getPath()));
+    }
+
+    HashingSink sink = HashingSink.sha256(Okio.blackhole());
+    try (BufferedSink buffer = Okio.buffer(sink)) {
+      for (FileItem item : files) {
+        buffer.writeUtf8(item.getFieldname()).writeByte(0);
+        buffer.writeUtf8(hashSource(UploadSource.of(context, item.getPath()))).writeByte(0);
+      }
+      if (parameters != null) {
+        for (Map.Entry<String, String> entry : new TreeMap<>(parameters).entrySet()) {
+          buffer.writeUtf8(entry.getKey()).writeByte(0);
+          buffer.writeUtf8(String.valueOf(entry.getValue())).writeByte(0);
+        }
+      }
+    }
+    return sink.hash().hex();
+  }
+
+  /** Returns the SHA-256 of {@code source}. Only hashes of files are cached. */
+  private String hashSource(UploadSource source) throws IOException {
+    File file = source.getFile();
+    if (file != null) {
+      return hashFile(file);
+    }
+
+    HashingSink sink = HashingSink.sha256(Okio.blackhole());
+    try (BufferedSource content = Okio.buffer(Okio.source(source.open()))) {
+      content.readAll(sink);
+    }
+    return sink.hash().hex();
+  }
+
+  /** Returns the SHA-256 of {@code file}, reading it only if it changed since the last call. */
+  public String hashFile(File file) throws IOException {
+    String path = file.getAbsolutePath();
+    long size = file.length();
+    long modified = file.lastModified();
+
+    try (Cursor cursor =
+        getReadableDatabase()
+            .query(
+                TABLE_FILE_HASHES,
+                new String[] {"hash"},
+                "path = ? AND size = ? AND modified = ?",
+                new String[] {path, String.valueOf(size), String.valueOf(modified)},
+                null,
+                null,
+                null)) {
+      if (cursor.moveToFirst()) {
+        return cursor.getString(0);
+      }
+    }
+
+    HashingSink sink = HashingSink.sha256(Okio.blackhole());
+    try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+      source.readAll(sink);
+    }
+    String hash = sink.hash().hex();
+
+    ContentValues values = new ContentValues();
+    values.put("path", path);
+    values.put("size", size);
+    values.put("modified", modified);
+    values.put("hash", hash);
+    getWritableDatabase()
+        .insertWithOnConflict(TABLE_FILE_HASHES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+    return hash;
+  }
+
+  /** Returns the result of a previous upload of the content {@code hash} to the same endpoint. */
+  @Nullable
+  public Entry lookup(@Nullable String method, @NonNull HttpUrl url, @NonNull String hash) {
+    try (Cursor cursor =
+        getReadableDatabase()
+            .query(
+                TABLE_RESULTS,
+                new String[] {"status_code", "response", "headers"},
+                "method = ? AND url = ? AND hash = ?",
+                new String[] {normalizeMethod(method), normalizeUrl(url), hash},
+                null,
+                null,
+                null)) {
+      if (cursor.moveToFirst()) {
+        return new Entry(cursor.getInt(0), cursor.getString(1), cursor.getString(2));
+      }
+    }
+    return null;
+  }
+
+  public void record(
+      @Nullable String method, @NonNull HttpUrl url, @NonNull String hash, @NonNull Entry entry) {
+    ContentValues values = new ContentValues();
+    values.put("method", normalizeMethod(method));
+    values.put("url", normalizeUrl(url));
+    values.put("hash", hash);
+    values.put("status_code", entry.statusCode);
+    values.put("response", entry.response);
+    values.put("headers", entry.headers);
+    values.put("created_at", System.currentTimeMillis());
+
+    SQLiteDatabase db = getWritableDatabase();
+    db.insertWithOnConflict(TABLE_RESULTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    db.execSQL(
+        "DELETE FROM "
+            + TABLE_RESULTS
+            + " WHERE rowid NOT IN (SELECT rowid FROM "
+            + TABLE_RESULTS
+            + " ORDER BY created_at DESC LIMIT "
+            + MAX_ENTRIES
+            + ")");
+  }
+
+  /** Uploads are sent as {@code POST} unless they use {@code PUT} or {@code PATCH}. */
+  private static String normalizeMethod(@Nullable String method) {
+    String normalized = method != null ? method.toUpperCase(Locale.ROOT) : "";
+    return normalized.equals("PUT") || normalized.equals("PATCH") ? normalized : "POST";
+  }
+
+  /** The URL without its fragment, which is never sent. */
+  private static String normalizeUrl(HttpUrl url) {
+    return url.newBuilder().fragment(null).build().toString();
+  }
+
+  /** The result of a previous upload. */
+  public static class Entry {
+    public final int statusCode;
+    @Nullable public final String response;
+    /** Response headers, encoded with {@link TaskCodec#STRING_MAP}. */
+    @Nullable public final String headers;
+
+    public Entry(int statusCode, @Nullable String response, @Nullable String headers) {
+      this.statusCode = statusCode;
+      this.response = response;
+      this.headers = headers;
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package com.bluechilli.flutteruploader;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * Network phase timings of a single upload, summed over all of its HTTP calls (chunks, parts and
+ * retries within a worker run).
+ *
+ * <p>Calls are measured through {@link #FACTORY}, which is installed on every client of the {@link
+ * HttpClientRegistry}; requests opt in by carrying their {@code UploadMetrics} as a tag. The time
+ * to first byte is measured from the end of the request to the start of the response headers, so
+ * it reflects the server, while DNS, connect and request body times reflect the network.
+ */
+public class UploadMetrics {
+  public static final String CALLS = "calls";
+  public static final String CONNECTIONS = "connections";
+  public static final String DNS_MS = "dnsMs";
+  /** Includes {@link #TLS_MS}. */
+  public static final String CONNECT_MS = "connectMs";
+  public static final String TLS_MS = "tlsMs";
+  public static final String REQUEST_HEADERS_MS = "requestHeadersMs";
+  public static final String REQUEST_BODY_MS = "requestBodyMs";
+  public static final String TIME_TO_FIRST_BYTE_MS = "timeToFirstByteMs";
+  public static final String RESPONSE_BODY_MS = "responseBodyMs";
+  public static final String TOTAL_MS = "totalMs";
+  public static final String REQUEST_BODY_BYTES = "requestBodyBytes";
+  public static final String RESPONSE_BODY_BYTES = "responseBodyBytes";
+
+  /** Creates a listener for calls whose request is tagged with an {@code UploadMetrics}. */
+  public static final EventListener.Factory FACTORY =
+      call -> {
+        UploadMetrics metrics = call.request().tag(UploadMetrics.class);
+        return metrics != null ? metrics.new CallListener() : EventListener.NONE;
+      };
+
+  private long calls;
+  private long connections;
+  private long dnsNanos;
+  private long connectNanos;
+  private long tlsNanos;
+  private long requestHeadersNanos;
+  private long requestBodyNanos;
+  private long timeToFirstByteNanos;
+  private long responseBodyNanos;
+  private long totalNanos;
+  private long requestBodyBytes;
+  private long responseBodyBytes;
+
+  public synchronized boolean isEmpty() {
+    return calls == 0;
+  }
+
+  public synchronized Map<String, Long> toMap() {
+    Map<String, Long> map = new LinkedHashMap<>();
+    map.put(CALLS, calls);
+    map.put(CONNECTIONS, connections);
+    map.put(DNS_MS, toMillis(dnsNanos));
+    map.put(CONNECT_MS, toMillis(connectNanos));
+    map.put(TLS_MS, toMillis(tlsNanos));
+    map.put(REQUEST_HEADERS_MS, toMillis(requestHeadersNanos));
+    map.put(REQUEST_BODY_MS, toMillis(requestBodyNanos));
+    map.put(TIME_TO_FIRST_BYTE_MS, toMillis(timeToFirstByteNanos));
+    map.put(RESPONSE_BODY_MS, toMillis(responseBodyNanos));
+    map.put(TOTAL_MS, toMillis(totalNanos));
+    map.put(REQUEST_BODY_BYTES, requestBodyBytes);
+    map.put(RESPONSE_BODY_BYTES, responseBodyBytes);
+    return map;
+  }
+
+  /** Encodes the metrics for the output {@code Data} of a worker, null if nothing was measured. */
+  @Nullable
+  public String encode() {
+    if (isEmpty()) {
+      return null;
+    }
+
+    Map<String, String> encoded = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> entry : toMap().entrySet()) {
+      encoded.put(entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    return TaskCodec.encode(TaskCodec.STRING_MAP, encoded);
+  }
+
+  /** Decodes metrics written by {@link #encode()}. */
+  @Nullable
+  public static Map<String, Object> decode(@Nullable String encoded) {
+    if (encoded == null || !TaskCodec.isEncoded(encoded)) {
+      return null;
+    }
+
+    Map<String, Object> metrics = new HashMap<>();
+    for (Map.Entry<String, String> entry :
+        TaskCodec.decode(TaskCodec.STRING_MAP, encoded).entrySet()) {
+      try {
+        metrics.put(entry.getKey(), Long.parseLong(entry.getValue()));
+      } catch (NumberFormatException ignored) {
+        // Written by a newer version.
+      }
+    }
+    return metrics;
+  }
+
+  private synchronized void add(CallListener call) {
+    calls++;
+    connections += call.connections;
+    dnsNanos += call.dnsNanos;
+    connectNanos += call.connectNanos;
+    tlsNanos += call.tlsNanos;
+    requestHeadersNanos += call.requestHeadersNanos;
+    requestBodyNanos += call.requestBodyNanos;
+    timeToFirstByteNanos += call.timeToFirstByteNanos;
+    responseBodyNanos += call.responseBodyNanos;
+    totalNanos += call.totalNanos;
+    requestBodyBytes += call.requestBodyBytes;
+    responseBodyBytes += call.responseBodyBytes;
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  /** Measures a single call, its events arrive sequentially. */
+  private class CallListener extends EventListener {
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long tlsStart;
+    private long requestHeadersStart;
+    private long requestBodyStart;
+    private long requestEnd;
+    private long responseBodyStart;
+
+    private long connections;
+    private long dnsNanos;
+    private long connectNanos;
+    private long tlsNanos;
+    private long requestHeadersNanos;
+    private long requestBodyNanos;
+    private long timeToFirstByteNanos;
+    private long responseBodyNanos;
+    private long totalNanos;
+    private long requestBodyBytes;
+    private long responseBodyBytes;
+
+    @Override
+    public void callStart(@NonNull Call call) {
+      callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+      dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(
+        @NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> addresses) {
+      dnsNanos += System.nanoTime() - dnsStart;
+    }
+
+    @Override
+    public void connectStart(
+        @NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy) {
+      connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+      tlsStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+      tlsNanos += System.nanoTime() - tlsStart;
+    }
+
+    @Override
+    public void connectEnd(
+        @NonNull Call call,
+        @NonNull InetSocketAddress address,
+        @NonNull Proxy proxy,
+        @Nullable Protocol protocol) {
+      connectNanos += System.nanoTime() - connectStart;
+      connections++;
+    }
+
+    @Override
+    public void connectFailed(
+        @NonNull Call call,
+        @NonNull InetSocketAddress address,
+        @NonNull Proxy proxy,
+        @Nullable Protocol protocol,
+        @NonNull IOException ioe) {
+      connectNanos += System.nanoTime() - connectStart;
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+      requestHeadersStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+      requestEnd = System.nanoTime();
+      requestHeadersNanos += requestEnd - requestHeadersStart;
+    }
+
+    @Override
+    public void requestBodyStart(@NonNull Call call) {
+      requestBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+      requestEnd = System.nanoTime();
+      requestBodyNanos += requestEnd - requestBodyStart;
+      requestBodyBytes += byteCount;
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+      if (requestEnd != 0) {
+        timeToFirstByteNanos += System.nanoTime() - requestEnd;
+      }
+    }
+
+    @Override
+    public void responseBodyStart(@NonNull Call call) {
+      responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+      responseBodyNanos += System.nanoTime() - responseBodyStart;
+      responseBodyBytes += byteCount;
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+      finish();
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+      finish();
+    }
+
+    private void finish() {
+      totalNanos = System.nanoTime() - callStart;
+      add(this);
+    }
+  }
+}
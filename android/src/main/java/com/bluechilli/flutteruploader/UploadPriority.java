@@ -0,0 +1,22 @@
+package com.bluechilli.flutteruploader;
+
+/** Scheduler lanes, higher priorities are started first. */
+public class UploadPriority {
+  public static final int LOW = 0;
+  public static final int NORMAL = 1;
+  public static final int HIGH = 2;
+
+  /** Returns the priority named {@code name}, or -1 if it is unknown. */
+  public static int fromName(String name) {
+    switch (name) {
+      case "low":
+        return LOW;
+      case "normal":
+        return NORMAL;
+      case "high":
+        return HIGH;
+      default:
+        return -1;
+    }
+  }
+}
@@ -0,0 +1,318 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the upload concurrency of the plugin.
+ *
+ * <p>Jobs are queued and started once fewer than {@link #getMaxConcurrentTasks()} jobs are
+ * running. Threads come from a single cached pool which is also handed to {@link
+ * androidx.work.WorkManager}, so there is exactly one pool whose size follows the actual demand.
+ * The limit can be changed at runtime, queued jobs are started immediately when it is raised.
+ *
+ * <p>Every job belongs to a host. Free slots are handed out round-robin across hosts, and at most
+ * {@link #getMaxConcurrentTasksPerHost()} jobs run against the same host, so a burst of uploads to
+ * one slow destination cannot starve the others.
+ *
+ * <p>Jobs are queued in one lane per {@link UploadPriority}. A job of a higher priority is always
+ * started before queued jobs of lower priorities, which keep their place in their own lane. Only
+ * workers which {@link androidx.work.WorkManager} has started are queued here; requests still
+ * waiting in WorkManager's own queue are started in the order they were enqueued.
+ */
+public class UploadScheduler {
+  public static final String STAT_QUEUED = "queued";
+  public static final String STAT_RUNNING = "running";
+  public static final String STAT_COMPLETED = "completed";
+  public static final String STAT_MAX_CONCURRENT_TASKS = "maxConcurrentTasks";
+  public static final String STAT_MAX_CONCURRENT_TASKS_PER_HOST = "maxConcurrentTasksPerHost";
+
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private static UploadScheduler instance = null;
+
+  private final ExecutorService executorService =
+      new ThreadPoolExecutor(
+          0,
+          Integer.MAX_VALUE,
+          KEEP_ALIVE_SECONDS,
+          TimeUnit.SECONDS,
+          new SynchronousQueue<>(),
+          new UploadThreadFactory());
+
+  /** Queued jobs, indexed by priority. */
+  private final HostQueue[] lanes = {new HostQueue(), new HostQueue(), new HostQueue()};
+  private final Map<String, Integer> runningCountPerHost = new HashMap<>();
+  private int runningCount = 0;
+  private long completedCount = 0;
+  private int maxConcurrentTasks;
+  private int maxConcurrentTasksPerHost;
+
+  UploadScheduler(int maxConcurrentTasks, int maxConcurrentTasksPerHost) {
+    this.maxConcurrentTasks = Math.max(1, maxConcurrentTasks);
+    this.maxConcurrentTasksPerHost = Math.max(0, maxConcurrentTasksPerHost);
+  }
+
+  public static synchronized UploadScheduler getInstance(Context context) {
+    if (instance == null) {
+      instance =
+          new UploadScheduler(
+              FlutterUploaderInitializer.getMaxConcurrentTaskMetadata(context),
+              FlutterUploaderInitializer.getMaxConcurrentTasksPerHost(context));
+    }
+    return instance;
+  }
+
+  /** The thread pool backing the scheduler, not subject to the concurrency limit. */
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  public synchronized int getMaxConcurrentTasks() {
+    return maxConcurrentTasks;
+  }
+
+  public void setMaxConcurrentTasks(int maxConcurrentTasks) {
+    if (maxConcurrentTasks < 1) {
+      throw new IllegalArgumentException("maxConcurrentTasks < 1: " + maxConcurrentTasks);
+    }
+    synchronized (this) {
+      this.maxConcurrentTasks = maxConcurrentTasks;
+    }
+    promoteAndExecute();
+  }
+
+  /** The maximum number of jobs running against the same host, 0 = unlimited. */
+  public synchronized int getMaxConcurrentTasksPerHost() {
+    return maxConcurrentTasksPerHost;
+  }
+
+  public void setMaxConcurrentTasksPerHost(int maxConcurrentTasksPerHost) {
+    if (maxConcurrentTasksPerHost < 0) {
+      throw new IllegalArgumentException(
+          "maxConcurrentTasksPerHost < 0: " + maxConcurrentTasksPerHost);
+    }
+    synchronized (this) {
+      this.maxConcurrentTasksPerHost = maxConcurrentTasksPerHost;
+    }
+    promoteAndExecute();
+  }
+
+  /**
+   * Queues {@code job} in the lane of {@code priority}, it is started as soon as a slot for {@code
+   * host} is available and no job of a higher priority is waiting for it.
+   */
+  public void enqueue(@NonNull String host, int priority, @NonNull Runnable job) {
+    synchronized (this) {
+      getLane(priority).add(new QueuedJob(host, job));
+    }
+    promoteAndExecute();
+  }
+
+  /**
+   * Removes {@code job} from the queue.
+   *
+   * @return false if the job is already running or has finished.
+   */
+  public synchronized boolean cancel(@NonNull Runnable job) {
+    for (HostQueue lane : lanes) {
+      if (lane.remove(job)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public synchronized int getQueuedCount() {
+    int queued = 0;
+    for (HostQueue lane : lanes) {
+      queued += lane.size();
+    }
+    return queued;
+  }
+
+  public synchronized int getRunningCount() {
+    return runningCount;
+  }
+
+  public synchronized Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put(STAT_QUEUED, getQueuedCount());
+    stats.put(STAT_RUNNING, runningCount);
+    stats.put(STAT_COMPLETED, completedCount);
+    stats.put(STAT_MAX_CONCURRENT_TASKS, maxConcurrentTasks);
+    stats.put(STAT_MAX_CONCURRENT_TASKS_PER_HOST, maxConcurrentTasksPerHost);
+    return stats;
+  }
+
+  private void promoteAndExecute() {
+    List<QueuedJob> executableJobs = new ArrayList<>();
+
+    synchronized (this) {
+      while (runningCount < maxConcurrentTasks) {
+        QueuedJob next = pollNextJob();
+        if (next == null) {
+          break;
+        }
+
+        executableJobs.add(next);
+        runningCount++;
+        runningCountPerHost.put(next.host, getRunningCount(next.host) + 1);
+      }
+    }
+
+    for (QueuedJob next : executableJobs) {
+      executorService.execute(
+          () -> {
+            try {
+              next.job.run();
+            } finally {
+              finished(next.host);
+            }
+          });
+    }
+  }
+
+  private void finished(String host) {
+    synchronized (this) {
+      runningCount--;
+      completedCount++;
+
+      int hostCount = getRunningCount(host) - 1;
+      if (hostCount > 0) {
+        runningCountPerHost.put(host, hostCount);
+      } else {
+        runningCountPerHost.remove(host);
+      }
+    }
+    promoteAndExecute();
+  }
+
+  /** Returns the next job which may start, taken from the highest priority lane possible. */
+  @Nullable
+  private QueuedJob pollNextJob() {
+    for (int priority = lanes.length - 1; priority >= 0; priority--) {
+      QueuedJob next = lanes[priority].poll(runningCountPerHost, maxConcurrentTasksPerHost);
+      if (next != null) {
+        return next;
+      }
+    }
+    return null;
+  }
+
+  private HostQueue getLane(int priority) {
+    return lanes[Math.max(UploadPriority.LOW, Math.min(UploadPriority.HIGH, priority))];
+  }
+
+  private int getRunningCount(String host) {
+    Integer count = runningCountPerHost.get(host);
+    return count != null ? count : 0;
+  }
+
+  private static class QueuedJob {
+    final String host;
+    final Runnable job;
+
+    QueuedJob(String host, Runnable job) {
+      this.host = host;
+      this.job = job;
+    }
+  }
+
+  /** Queued jobs grouped by host, handed out round-robin across hosts. */
+  private static class HostQueue {
+    private final Map<String, Deque<QueuedJob>> jobsByHost = new HashMap<>();
+    /** Hosts with queued jobs, the head is served next. */
+    private final Deque<String> hosts = new ArrayDeque<>();
+
+    private int size = 0;
+
+    void add(QueuedJob queuedJob) {
+      Deque<QueuedJob> jobs = jobsByHost.get(queuedJob.host);
+      if (jobs == null) {
+        jobs = new ArrayDeque<>();
+        jobsByHost.put(queuedJob.host, jobs);
+        hosts.add(queuedJob.host);
+      }
+      jobs.add(queuedJob);
+      size++;
+    }
+
+    boolean remove(Runnable job) {
+      for (Map.Entry<String, Deque<QueuedJob>> entry : jobsByHost.entrySet()) {
+        Deque<QueuedJob> jobs = entry.getValue();
+        for (Iterator<QueuedJob> it = jobs.iterator(); it.hasNext(); ) {
+          if (it.next().job == job) {
+            it.remove();
+            size--;
+            if (jobs.isEmpty()) {
+              jobsByHost.remove(entry.getKey());
+              hosts.remove(entry.getKey());
+            }
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * Returns the next job of the first host, in round-robin order, which runs fewer than {@code
+     * maxPerHost} jobs. Returns null if no such job is queued.
+     */
+    @Nullable
+    QueuedJob poll(Map<String, Integer> runningCountPerHost, int maxPerHost) {
+      for (int i = 0, n = hosts.size(); i < n; i++) {
+        String host = hosts.poll();
+        Deque<QueuedJob> jobs = jobsByHost.get(host);
+
+        Integer running = runningCountPerHost.get(host);
+        QueuedJob next = null;
+        if (maxPerHost <= 0 || running == null || running < maxPerHost) {
+          next = jobs.poll();
+        }
+
+        if (jobs.isEmpty()) {
+          jobsByHost.remove(host);
+        } else {
+          hosts.add(host);
+        }
+
+        if (next != null) {
+          size--;
+          return next;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static class UploadThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadCount = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+      Thread thread = new Thread(runnable, "flutter_uploader-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
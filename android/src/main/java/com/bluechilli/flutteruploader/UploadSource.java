@@ -0,0 +1,209 @@
+package com.bluechilli.flutteruploader;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * The content behind the path of a {@link FileItem}: either a file or a {@code content://} URI,
+ * e.g. gallery media, which is streamed from its {@link ContentResolver} without a temporary copy.
+ */
+public abstract class UploadSource {
+  private static final String TAG = "UploadSource";
+
+  public static boolean isContentUri(@Nullable String path) {
+    return path != null && path.startsWith(ContentResolver.SCHEME_CONTENT + ":");
+  }
+
+  public static UploadSource of(@NonNull Context context, @NonNull String path) {
+    if (isContentUri(path)) {
+      return new ContentSource(context.getContentResolver(), Uri.parse(path));
+    }
+    return new FileSource(new File(path));
+  }
+
+  /** Whether the content exists and can be read. */
+  public abstract boolean exists();
+
+  /** Size in bytes, {@link FileItem#UNKNOWN_SIZE} if the provider does not know it. */
+  public abstract long length();
+
+  /** The file name sent with multipart uploads. */
+  public abstract String getName();
+
+  public abstract String getMimeType();
+
+  /** The underlying file, or null if the content is provided by a content provider. */
+  @Nullable
+  public abstract File getFile();
+
+  /** Opens the content, positioned at its start. The stream must be closed by the caller. */
+  public abstract FileInputStream open() throws IOException;
+
+  private static class FileSource extends UploadSource {
+    private final File file;
+
+    FileSource(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public boolean exists() {
+      return file.isFile();
+    }
+
+    @Override
+    public long length() {
+      return file.length();
+    }
+
+    @Override
+    public String getName() {
+      return file.getName();
+    }
+
+    @Override
+    public String getMimeType() {
+      return MimeTypes.fromPath(file.getPath());
+    }
+
+    @Override
+    public File getFile() {
+      return file;
+    }
+
+    @Override
+    public FileInputStream open() throws IOException {
+      return new FileInputStream(file);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return file.getPath();
+    }
+  }
+
+  private static class ContentSource extends UploadSource {
+    private final ContentResolver resolver;
+    private final Uri uri;
+
+    private boolean queried = false;
+    private long size = FileItem.UNKNOWN_SIZE;
+    @Nullable private String name;
+
+    ContentSource(ContentResolver resolver, Uri uri) {
+      this.resolver = resolver;
+      this.uri = uri;
+    }
+
+    @Override
+    public boolean exists() {
+      try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r")) {
+        return descriptor != null;
+      } catch (IOException | SecurityException e) {
+        Log.d(TAG, "Unable to open " + uri, e);
+        return false;
+      }
+    }
+
+    @Override
+    public long length() {
+      query();
+      if (size != FileItem.UNKNOWN_SIZE) {
+        return size;
+      }
+
+      // Not every provider reports OpenableColumns.SIZE, fall back to the descriptor.
+      try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r")) {
+        return descriptor != null ? descriptor.getStatSize() : FileItem.UNKNOWN_SIZE;
+      } catch (IOException | SecurityException e) {
+        return FileItem.UNKNOWN_SIZE;
+      }
+    }
+
+    @Override
+    public String getName() {
+      query();
+      if (name != null) {
+        return name;
+      }
+      String lastPathSegment = uri.getLastPathSegment();
+      return lastPathSegment != null ? lastPathSegment : "file";
+    }
+
+    @Override
+    public String getMimeType() {
+      String mimeType = null;
+      try {
+        mimeType = resolver.getType(uri);
+      } catch (SecurityException e) {
+        Log.d(TAG, "Unable to determine the mime type of " + uri, e);
+      }
+      return mimeType != null ? mimeType : MimeTypes.fromPath(getName());
+    }
+
+    @Nullable
+    @Override
+    public File getFile() {
+      return null;
+    }
+
+    @Override
+    public FileInputStream open() throws IOException {
+      ParcelFileDescriptor descriptor;
+      try {
+        descriptor = resolver.openFileDescriptor(uri, "r");
+      } catch (SecurityException e) {
+        throw new IOException("No permission to read " + uri, e);
+      }
+      if (descriptor == null) {
+        throw new FileNotFoundException("Unable to open " + uri);
+      }
+      return new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+    }
+
+    /** Reads the size and display name once, both are optional for providers. */
+    private void query() {
+      if (queried) {
+        return;
+      }
+      queried = true;
+
+      String[] projection = {OpenableColumns.SIZE, OpenableColumns.DISPLAY_NAME};
+      try (Cursor cursor = resolver.query(uri, projection, null, null, null)) {
+        if (cursor == null || !cursor.moveToFirst()) {
+          return;
+        }
+
+        int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+        if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+          size = cursor.getLong(sizeIndex);
+        }
+
+        int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+        if (nameIndex != -1 && !cursor.isNull(nameIndex)) {
+          name = cursor.getString(nameIndex);
+        }
+      } catch (RuntimeException e) {
+        Log.d(TAG, "Unable to query " + uri, e);
+      }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return uri.toString();
+    }
+  }
+}
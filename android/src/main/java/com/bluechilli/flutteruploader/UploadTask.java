@@ -14,6 +14,13 @@ public class UploadTask {
   private int requestTimeoutInSeconds;
   private boolean binaryUpload;
   private String tag;
+  private long chunkSize;
+  private int parallelParts;
+  private String completeUrl;
+  private int priority = UploadPriority.NORMAL;
+  private String compression;
+  private boolean deduplicate;
+  private String dedupCheckUrl;
 
   public UploadTask(
       String url,
@@ -69,4 +76,67 @@ public class UploadTask {
   public String getTag() {
     return tag;
   }
+
+  public long getChunkSize() {
+    return chunkSize;
+  }
+
+  public UploadTask setChunkSize(long chunkSize) {
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  public int getParallelParts() {
+    return parallelParts;
+  }
+
+  public UploadTask setParallelParts(int parallelParts) {
+    this.parallelParts = parallelParts;
+    return this;
+  }
+
+  public String getCompleteUrl() {
+    return completeUrl;
+  }
+
+  public UploadTask setCompleteUrl(String completeUrl) {
+    this.completeUrl = completeUrl;
+    return this;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public UploadTask setPriority(int priority) {
+    this.priority = priority;
+    return this;
+  }
+
+  public String getCompression() {
+    return compression;
+  }
+
+  public UploadTask setCompression(String compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  public boolean isDeduplicate() {
+    return deduplicate;
+  }
+
+  public UploadTask setDeduplicate(boolean deduplicate) {
+    this.deduplicate = deduplicate;
+    return this;
+  }
+
+  public String getDedupCheckUrl() {
+    return dedupCheckUrl;
+  }
+
+  public UploadTask setDedupCheckUrl(String dedupCheckUrl) {
+    this.dedupCheckUrl = dedupCheckUrl;
+    return this;
+  }
 }
@@ -1,8 +1,9 @@
 package com.bluechilli.flutteruploader;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
 import android.util.Log;
-import android.webkit.MimeTypeMap;
 import android.webkit.URLUtil;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -14,11 +15,6 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
 import com.google.gson.JsonIOException;
 import com.google.gson.reflect.TypeToken;
-import io.flutter.FlutterInjector;
-import io.flutter.embedding.engine.FlutterEngine;
-import io.flutter.embedding.engine.dart.DartExecutor;
-import io.flutter.embedding.engine.loader.FlutterLoader;
-import io.flutter.view.FlutterCallbackInformation;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -29,10 +25,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -40,6 +39,9 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
 
 public class UploadWorker extends ListenableWorker implements CountProgressListener {
   public static final String ARG_URL = "url";
@@ -49,6 +51,14 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
   public static final String ARG_FILES = "files";
   public static final String ARG_REQUEST_TIMEOUT = "requestTimeout";
   public static final String ARG_BINARY_UPLOAD = "binaryUpload";
+  public static final String ARG_CHUNK_SIZE = "chunkSize";
+  public static final String ARG_PARALLEL_PARTS = "parallelParts";
+  public static final String ARG_COMPLETE_URL = "completeUrl";
+  public static final String ARG_MANIFEST_ID = "manifestId";
+  public static final String ARG_PRIORITY = "priority";
+  public static final String ARG_COMPRESSION = "compression";
+  public static final String ARG_DEDUPLICATE = "deduplicate";
+  public static final String ARG_DEDUP_CHECK_URL = "dedupCheckUrl";
   public static final String ARG_UPLOAD_REQUEST_TAG = "tag";
   public static final String ARG_ID = "primaryId";
   public static final String EXTRA_STATUS_CODE = "statusCode";
@@ -60,95 +70,272 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
   public static final String EXTRA_RESPONSE_FILE = "response_file";
   public static final String EXTRA_ID = "id";
   public static final String EXTRA_HEADERS = "headers";
+  public static final String EXTRA_METRICS = "metrics";
   private static final String TAG = UploadWorker.class.getSimpleName();
-  private static final int UPDATE_STEP = 0;
   private static final int DEFAULT_ERROR_STATUS_CODE = 500;
+  private static final int HTTP_RESUME_INCOMPLETE = 308;
+  private static final int MAX_RESUME_ATTEMPTS = 10;
+  private static final long RESPONSE_READ_SIZE = 8192;
+  /** Carries the content hash of a duplicate check, see {@link #ARG_DEDUP_CHECK_URL}. */
+  private static final String CONTENT_HASH_HEADER = "Upload-Content-Hash";
+  private static final Type LEGACY_STRING_MAP_TYPE =
+      new TypeToken<Map<String, String>>() {}.getType();
+  private static final Type LEGACY_FILE_ITEMS_TYPE = new TypeToken<List<FileItem>>() {}.getType();
 
   private String tag;
   private Call call;
-  private boolean isCancelled = false;
+  private final List<Call> partCalls = new CopyOnWriteArrayList<>();
+  private volatile boolean isCancelled = false;
+  /** The content hash of a deduplicated upload, set once the content was hashed. */
+  @Nullable private String contentHash;
 
   private Context context;
 
+  private final ProgressCoalescer progressCoalescer;
+  private final long maxResponseSize;
+  private final long responseMemoryThreshold;
+  /** Bandwidth share of all request bodies of this upload, including parallel parts. */
+  private final BandwidthAllocator.Share bandwidthShare;
+  private final int socketSendBufferSize;
+  private final UploadMetrics metrics = new UploadMetrics();
+
   public UploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
     super(context, workerParams);
-    this.backgroundExecutor = UploadExecutorService.getExecutorService(context);
+    this.scheduler = UploadScheduler.getInstance(context);
+    this.engineManager = BackgroundEngineManager.getInstance(context);
     this.context = context;
+    this.progressCoalescer = FlutterUploaderInitializer.createProgressCoalescer(context);
+    this.maxResponseSize = FlutterUploaderInitializer.getMaxResponseSize(context);
+    this.responseMemoryThreshold = FlutterUploaderInitializer.getResponseMemoryThreshold(context);
+    this.socketSendBufferSize = FlutterUploaderInitializer.getSocketSendBufferSize(context);
+    this.bandwidthShare =
+        BandwidthAllocator.getInstance()
+            .newShare(
+                BandwidthAllocator.getWeight(
+                    workerParams.getInputData().getInt(ARG_PRIORITY, UploadPriority.NORMAL)));
   }
 
-  @Nullable private static FlutterEngine engine;
-
-  private Executor backgroundExecutor;
+  private final UploadScheduler scheduler;
+  private final BackgroundEngineManager engineManager;
+  @Nullable private Runnable job;
 
   @NonNull
   @Override
   public ListenableFuture<Result> startWork() {
-    startEngine();
+    // The background handler is told about the result, keep its engine alive until then.
+    engineManager.acquire();
 
     return CallbackToFutureAdapter.getFuture(
         completer -> {
-          backgroundExecutor.execute(
+          job =
               () -> {
+                if (isStopped()) {
+                  // Stopped while waiting for a free slot.
+                  engineManager.release();
+                  completer.setCancelled();
+                  return;
+                }
+
                 try {
                   final Result result = doWorkInternal();
+                  if (!isCancelled && !Result.retry().equals(result)) {
+                    deleteManifest();
+                  }
                   completer.set(result);
                 } catch (Throwable e) {
                   completer.setException(e);
                 } finally {
-                  // Do not destroy the engine at this very moment.
-                  // Keep it running in the background for just a little while.
-                  //                  stopEngine();
+                  engineManager.release();
                 }
-              });
+              };
+          scheduler.enqueue(
+              getHost(), getInputData().getInt(ARG_PRIORITY, UploadPriority.NORMAL), job);
 
           return getId().toString();
         });
   }
 
+  /** The host this upload is sent to, used to share the scheduler's slots fairly. */
+  @NonNull
+  private String getHost() {
+    HttpUrl httpUrl = getHttpUrl();
+    return httpUrl != null ? httpUrl.host() : "";
+  }
+
+  @Nullable
+  private HttpUrl getHttpUrl() {
+    String url = getInputData().getString(ARG_URL);
+    return url != null ? HttpUrl.parse(url) : null;
+  }
+
+  /**
+   * Looks up a previous upload of the same content to the same endpoint, otherwise asks the server
+   * through {@code checkUrl} whether it stores the content already. Returns null if the content
+   * has to be uploaded.
+   */
+  @Nullable
+  private Result findDuplicate(
+      OkHttpClient client,
+      Map<String, String> headers,
+      Map<String, String> parameters,
+      List<FileItem> files,
+      boolean isBinaryUpload,
+      @Nullable String checkUrl) {
+    UploadDedupIndex index = UploadDedupIndex.getInstance(context);
+    HttpUrl url = getHttpUrl();
+    UploadDedupIndex.Entry entry;
+
+    if (url == null) {
+      return null;
+    }
+
+    try {
+      contentHash = index.hashContent(files, parameters, isBinaryUpload);
+      entry = index.lookup(getInputData().getString(ARG_METHOD), url, contentHash);
+    } catch (IOException | SQLiteException e) {
+      Log.w(TAG, "Unable to look up duplicates of " + tag, e);
+      return null;
+    }
+
+    if (entry == null && checkUrl != null) {
+      Request request =
+          newRequestBuilder(headers)
+              .url(checkUrl)
+              .head()
+              .header(CONTENT_HASH_HEADER, contentHash)
+              .build();
+      call = client.newCall(request);
+
+      try (Response response = call.execute()) {
+        if (response.isSuccessful()) {
+          entry =
+              new UploadDedupIndex.Entry(response.code(), null, encodeHeaders(response.headers()));
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Duplicate check failed for " + tag, e);
+      }
+    }
+
+    if (entry == null) {
+      return null;
+    }
+
+    Log.d(TAG, "Skipping duplicate upload for " + tag);
+    return Result.success(
+        new Data.Builder()
+            .putString(EXTRA_ID, getId().toString())
+            .putInt(EXTRA_STATUS, UploadStatus.COMPLETE)
+            .putInt(EXTRA_STATUS_CODE, entry.statusCode)
+            .putString(EXTRA_HEADERS, entry.headers)
+            .putString(EXTRA_RESPONSE, entry.response)
+            .putString(EXTRA_METRICS, metrics.encode())
+            .build());
+  }
+
+  /** Remembers the result of a successful deduplicated upload. */
+  private void recordResult(int statusCode, @Nullable String response, String headers) {
+    HttpUrl url = getHttpUrl();
+    if (contentHash == null || url == null) {
+      return;
+    }
+
+    try {
+      UploadDedupIndex.getInstance(context)
+          .record(
+              getInputData().getString(ARG_METHOD),
+              url,
+              contentHash,
+              new UploadDedupIndex.Entry(statusCode, response, headers));
+    } catch (SQLiteException e) {
+      Log.w(TAG, "Unable to record the result of " + tag, e);
+    }
+  }
+
+  /** The manifest is no longer needed once the task has finished. */
+  private void deleteManifest() {
+    String manifestId = getInputData().getString(ARG_MANIFEST_ID);
+    if (manifestId != null) {
+      TaskManifestStore.delete(context, manifestId);
+    }
+  }
+
   @NonNull
   public Result doWorkInternal() {
     String url = getInputData().getString(ARG_URL);
     String method = getInputData().getString(ARG_METHOD);
     int timeout = getInputData().getInt(ARG_REQUEST_TIMEOUT, 3600);
     boolean isBinaryUpload = getInputData().getBoolean(ARG_BINARY_UPLOAD, false);
-    String headersJson = getInputData().getString(ARG_HEADERS);
-    String parametersJson = getInputData().getString(ARG_DATA);
-    String filesJson = getInputData().getString(ARG_FILES);
+    long chunkSize = getInputData().getLong(ARG_CHUNK_SIZE, 0);
+    int parallelParts = getInputData().getInt(ARG_PARALLEL_PARTS, 0);
+    String completeUrl = getInputData().getString(ARG_COMPLETE_URL);
+    String manifestId = getInputData().getString(ARG_MANIFEST_ID);
+    String compression = getInputData().getString(ARG_COMPRESSION);
+    boolean deduplicate = getInputData().getBoolean(ARG_DEDUPLICATE, false);
+    String dedupCheckUrl = getInputData().getString(ARG_DEDUP_CHECK_URL);
     tag = getInputData().getString(ARG_UPLOAD_REQUEST_TAG);
 
     if (tag == null) {
       tag = getId().toString();
     }
 
-    int statusCode = 200;
+    Map<String, String> payload = null;
+    if (manifestId != null) {
+      payload = TaskManifestStore.read(context, manifestId);
+
+      if (payload == null) {
+        return Result.failure(
+            createOutputErrorData(
+                UploadStatus.FAILED,
+                DEFAULT_ERROR_STATUS_CODE,
+                "invalid_manifest",
+                "The task manifest is missing",
+                null));
+      }
+    }
+
+    String encodedHeaders = getPayload(payload, ARG_HEADERS);
+    String encodedParameters = getPayload(payload, ARG_DATA);
+    String encodedFiles = getPayload(payload, ARG_FILES);
 
     try {
-      Map<String, String> headers = null;
-      Map<String, String> parameters = null;
-      List<FileItem> files = new ArrayList<>();
-      Gson gson = new Gson();
-      Type type = new TypeToken<Map<String, String>>() {}.getType();
-      Type fileItemType = new TypeToken<List<FileItem>>() {}.getType();
-
-      if (headersJson != null) {
-        headers = gson.fromJson(headersJson, type);
+      Map<String, String> headers =
+          decodeData(encodedHeaders, TaskCodec.STRING_MAP, LEGACY_STRING_MAP_TYPE);
+      Map<String, String> parameters =
+          decodeData(encodedParameters, TaskCodec.STRING_MAP, LEGACY_STRING_MAP_TYPE);
+      List<FileItem> files = decodeData(encodedFiles, TaskCodec.FILE_ITEMS, LEGACY_FILE_ITEMS_TYPE);
+
+      if (files == null) {
+        files = new ArrayList<>();
       }
 
-      if (parametersJson != null) {
-        parameters = gson.fromJson(parametersJson, type);
+      if (!URLUtil.isValidUrl(url)) {
+        return Result.failure(
+            createOutputErrorData(
+                UploadStatus.FAILED,
+                DEFAULT_ERROR_STATUS_CODE,
+                "invalid_url",
+                "url is not a valid url",
+                null));
       }
 
-      if (filesJson != null) {
-        files = gson.fromJson(filesJson, fileItemType);
+      OkHttpClient client = HttpClientRegistry.getClient(timeout, socketSendBufferSize);
+
+      if (deduplicate) {
+        Result duplicate =
+            findDuplicate(client, headers, parameters, files, isBinaryUpload, dedupCheckUrl);
+        if (duplicate != null) {
+          return duplicate;
+        }
       }
 
       final RequestBody innerRequestBody;
+      boolean compressible = true;
 
       if (isBinaryUpload) {
         final FileItem item = files.get(0);
-        File file = new File(item.getPath());
+        UploadSource source = UploadSource.of(context, item.getPath());
 
-        if (!file.exists()) {
+        if (!source.exists()) {
           return Result.failure(
               createOutputErrorData(
                   UploadStatus.FAILED,
@@ -158,28 +345,58 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
                   null));
         }
 
-        String mimeType = GetMimeType(item.getPath());
+        String mimeType = GetMimeType(item, source);
         MediaType contentType = MediaType.parse(mimeType);
-        innerRequestBody = RequestBody.create(file, contentType);
+        long total = GetSize(item, source);
+
+        if (total == FileItem.UNKNOWN_SIZE && (parallelParts > 1 || chunkSize > 0)) {
+          // Ranges need the total size, stream the content in a single request instead.
+          Log.d(TAG, "Size of " + source + " is unknown, uploading it in one request");
+        } else if (parallelParts > 1) {
+          return doParallelUpload(
+              client,
+              url,
+              completeUrl != null ? completeUrl : url,
+              method,
+              headers,
+              source,
+              total,
+              contentType,
+              Math.min(parallelParts, HttpClientRegistry.MAX_REQUESTS_PER_HOST),
+              chunkSize);
+        } else if (chunkSize > 0) {
+          return doChunkedUpload(
+              client, url, method, headers, source, total, contentType, chunkSize);
+        }
+
+        innerRequestBody = new FileRangeRequestBody(source, contentType, 0, total, true);
+        compressible = CompressedRequestBody.isCompressible(mimeType);
       } else {
         MultipartBody.Builder formRequestBuilder = prepareRequest(parameters, null);
-        int fileExistsCount = 0;
         for (FileItem item : files) {
-          File file = new File(item.getPath());
+          UploadSource source = UploadSource.of(context, item.getPath());
           Log.d(TAG, "attaching file: " + item.getPath());
 
-          if (file.exists() && file.isFile()) {
-            fileExistsCount++;
-            String mimeType = GetMimeType(item.getPath());
-            MediaType contentType = MediaType.parse(mimeType);
-            RequestBody fileBody = RequestBody.create(file, contentType);
-            formRequestBuilder.addFormDataPart(item.getFieldname(), file.getName(), fileBody);
-          } else {
-            Log.d(TAG, "File does not exists -> file:" + item.getPath());
+          // Like at enqueue time, a file which was removed since fails the whole upload.
+          if (!source.exists()) {
+            return Result.failure(
+                createOutputErrorData(
+                    UploadStatus.FAILED,
+                    DEFAULT_ERROR_STATUS_CODE,
+                    "invalid_files",
+                    "File does not exist: " + item.getPath(),
+                    null));
           }
+
+          String mimeType = GetMimeType(item, source);
+          MediaType contentType = MediaType.parse(mimeType);
+          RequestBody fileBody =
+              new FileRangeRequestBody(source, contentType, 0, GetSize(item, source), true);
+          formRequestBuilder.addFormDataPart(item.getFieldname(), source.getName(), fileBody);
+          compressible &= CompressedRequestBody.isCompressible(mimeType);
         }
 
-        if (fileExistsCount <= 0) {
+        if (files.isEmpty()) {
           return Result.failure(
               createOutputErrorData(
                   UploadStatus.FAILED,
@@ -192,140 +409,525 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
         innerRequestBody = formRequestBuilder.build();
       }
 
-      RequestBody requestBody = new CountingRequestBody(innerRequestBody, getId().toString(), this);
-      Request.Builder requestBuilder = new Request.Builder();
+      RequestBody requestBody =
+          new CountingRequestBody(innerRequestBody, getId().toString(), this, bandwidthShare);
+      Request.Builder requestBuilder = newRequestBuilder(headers);
 
-      requestBuilder.addHeader("Accept", "*/*");
+      if (CompressedRequestBody.isSupported(compression) && compressible) {
+        // Compress outside of the counting body, progress refers to the uncompressed bytes.
+        requestBody = new CompressedRequestBody(requestBody, compression);
+        requestBuilder.header("Content-Encoding", compression);
+      }
 
-      if (headers != null) {
-        for (String key : headers.keySet()) {
-          String header = headers.get(key);
-          if (header != null && !header.isEmpty()) {
-            requestBuilder = requestBuilder.header(key, header);
-          }
+      Request request = buildRequest(requestBuilder, method, url, requestBody);
+
+      Log.d(TAG, "Start uploading for " + tag);
+
+      call = client.newCall(request);
+      return handleResponse(call.execute());
+    } catch (ProtocolException ex) {
+      if (isCancelled) {
+        return Result.failure();
+      }
+      return handleException(context, ex, "protocol");
+    } catch (JsonIOException ex) {
+      return handleException(context, ex, "json_error");
+    } catch (UnknownHostException ex) {
+      return handleException(context, ex, "unknown_host");
+    } catch (IOException ex) {
+      return handleException(context, ex, "io_error");
+    } catch (Exception ex) {
+      return handleException(context, ex, "upload error");
+    } finally {
+      call = null;
+      partCalls.clear();
+    }
+  }
+
+  /**
+   * Sends the file in chunks of {@code chunkSize} bytes, each one carrying a {@code Content-Range}
+   * and {@code Upload-Offset} header. The acknowledged offset is persisted after every chunk, so a
+   * retried worker (failure, WorkManager stop or process death) continues where it left off.
+   *
+   * <p>A chunk which the server does not acknowledge is retried up to {@link #MAX_RESUME_ATTEMPTS}
+   * times, like an interrupted one. The upload fails if the server asks for more data once all of
+   * it was sent.
+   */
+  private Result doChunkedUpload(
+      OkHttpClient client,
+      String url,
+      String method,
+      Map<String, String> headers,
+      UploadSource source,
+      long total,
+      MediaType contentType,
+      long chunkSize)
+      throws IOException {
+    final String taskId = getId().toString();
+
+    long offset = SharedPreferenceHelper.getUploadOffset(context, taskId);
+    if (offset < 0 || offset > total) {
+      offset = 0;
+    }
+
+    Log.d(TAG, "Start chunked uploading for " + tag + " at offset " + offset);
+
+    while (true) {
+      if (isCancelled) {
+        return Result.failure();
+      }
+
+      final long length = Math.min(chunkSize, total - offset);
+      final long end = offset + length;
+
+      RequestBody chunkBody =
+          new FileRangeRequestBody(source, contentType, offset, length, end >= total);
+      RequestBody requestBody =
+          new CountingRequestBody(
+              chunkBody, taskId, new ChunkProgressListener(this, offset, total), bandwidthShare);
+      Request.Builder requestBuilder =
+          newRequestBuilder(headers)
+              .header("Content-Range", getContentRange(offset, length, total))
+              .header("Upload-Offset", String.valueOf(offset));
+      Request request = buildRequest(requestBuilder, method, url, requestBody);
+
+      Response response;
+      try {
+        call = client.newCall(request);
+        response = call.execute();
+      } catch (IOException ex) {
+        if (isCancelled) {
+          return Result.failure();
+        }
+
+        if (getRunAttemptCount() < MAX_RESUME_ATTEMPTS) {
+          Log.d(TAG, "Chunk upload interrupted for " + tag + ", retrying from " + offset, ex);
+          return Result.retry();
         }
+
+        SharedPreferenceHelper.clearUploadOffset(context, taskId);
+        throw ex;
       }
 
-      if (!URLUtil.isValidUrl(url)) {
+      if (end >= total && response.isSuccessful()) {
+        SharedPreferenceHelper.clearUploadOffset(context, taskId);
+        return handleResponse(response);
+      }
+
+      if (!response.isSuccessful() && response.code() != HTTP_RESUME_INCOMPLETE) {
+        SharedPreferenceHelper.clearUploadOffset(context, taskId);
+        return handleResponse(response);
+      }
+
+      final long acknowledged = getAcknowledgedOffset(response, end);
+      response.close();
+
+      if (length == 0) {
+        // Everything was sent already, the server will not complete the upload.
+        SharedPreferenceHelper.clearUploadOffset(context, taskId);
         return Result.failure(
             createOutputErrorData(
                 UploadStatus.FAILED,
-                DEFAULT_ERROR_STATUS_CODE,
-                "invalid_url",
-                "url is not a valid url",
+                HTTP_RESUME_INCOMPLETE,
+                "upload_incomplete",
+                "The server did not complete the upload after all " + total + " bytes were sent",
                 null));
       }
 
-      Request request;
-
-      switch (method.toUpperCase()) {
-        case "PUT":
-          request = requestBuilder.url(url).put(requestBody).build();
-          break;
-        case "PATCH":
-          request = requestBuilder.url(url).patch(requestBody).build();
-          break;
-        default:
-          request = requestBuilder.url(url).post(requestBody).build();
-          break;
+      if (acknowledged <= offset) {
+        if (getRunAttemptCount() < MAX_RESUME_ATTEMPTS) {
+          Log.d(TAG, "Server did not acknowledge chunk for " + tag + ", retrying from " + offset);
+          return Result.retry();
+        }
+
+        SharedPreferenceHelper.clearUploadOffset(context, taskId);
+        return Result.failure(
+            createOutputErrorData(
+                UploadStatus.FAILED,
+                HTTP_RESUME_INCOMPLETE,
+                "upload_incomplete",
+                "The server did not acknowledge the chunk at offset " + offset,
+                null));
       }
 
-      Log.d(TAG, "Start uploading for " + tag);
+      offset = Math.min(acknowledged, total);
+      SharedPreferenceHelper.saveUploadOffset(context, taskId, offset);
+    }
+  }
 
-      OkHttpClient client =
-          new OkHttpClient.Builder()
-              .connectTimeout((long) timeout, TimeUnit.SECONDS)
-              .writeTimeout((long) timeout, TimeUnit.SECONDS)
-              .readTimeout((long) timeout, TimeUnit.SECONDS)
-              .build();
+  /**
+   * Splits the file into parts of {@code partSize} bytes (or evenly across {@code parallelParts}
+   * when no size is given) and uploads up to {@code parallelParts} of them concurrently, in the
+   * style of S3 multipart uploads. Each part is sent to {@code url} with a {@code partNumber} query
+   * parameter and a {@code Content-Range} header. Once all parts are stored, the collected {@code
+   * ETag}s are posted as JSON to {@code completeUrl}, whose response becomes the upload result.
+   * The upload fails if any part was acknowledged without an {@code ETag}.
+   */
+  private Result doParallelUpload(
+      OkHttpClient client,
+      String url,
+      String completeUrl,
+      String method,
+      Map<String, String> headers,
+      UploadSource source,
+      long total,
+      MediaType contentType,
+      int parallelParts,
+      long partSize)
+      throws IOException, InterruptedException {
+    final String taskId = getId().toString();
+
+    if (partSize <= 0) {
+      partSize = Math.max(1, (total + parallelParts - 1) / parallelParts);
+    }
 
-      call = client.newCall(request);
-      Response response = call.execute();
-      statusCode = response.code();
-      Headers rheaders = response.headers();
-      Map<String, String> outputHeaders = new HashMap<>();
+    final int partCount = (int) Math.max(1, (total + partSize - 1) / partSize);
+    final String[] etags = new String[partCount];
+    final AtomicReference<Object> failure = new AtomicReference<>();
+    final AggregateProgressListener progressListener =
+        new AggregateProgressListener(this, partCount, total);
+    final Semaphore slots = new Semaphore(parallelParts);
 
-      boolean hasJsonResponse = true;
+    Log.d(TAG, "Start parallel uploading for " + tag + " in " + partCount + " parts");
 
-      String responseContentType = rheaders.get("content-type");
+    for (int i = 0; i < partCount; i++) {
+      slots.acquire();
 
-      ResponseBody body = response.body();
+      if (isCancelled || failure.get() != null) {
+        slots.release();
+        break;
+      }
 
-      hasJsonResponse =
-          responseContentType != null && responseContentType.contains("json") && body != null;
+      final int partIndex = i;
+      final long offset = i * partSize;
+      final long length = Math.min(partSize, total - offset);
+
+      RequestBody partBody =
+          new FileRangeRequestBody(source, contentType, offset, length, offset + length >= total);
+      RequestBody requestBody =
+          new CountingRequestBody(
+              partBody, taskId, progressListener.forPart(partIndex), bandwidthShare);
+      HttpUrl partUrl =
+          HttpUrl.get(url)
+              .newBuilder()
+              .addQueryParameter("partNumber", String.valueOf(partIndex + 1))
+              .build();
+      Request.Builder requestBuilder =
+          newRequestBuilder(headers)
+              .header("Content-Range", getContentRange(offset, length, total));
+      Request request = buildRequest(requestBuilder, method, partUrl.toString(), requestBody);
+
+      Call partCall = client.newCall(request);
+      partCalls.add(partCall);
+      partCall.enqueue(
+          new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+              failure.compareAndSet(null, e);
+              slots.release();
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+              if (response.isSuccessful()) {
+                etags[partIndex] = response.header("ETag");
+                response.close();
+              } else if (!failure.compareAndSet(null, response)) {
+                response.close();
+              }
+              slots.release();
+            }
+          });
+    }
 
-      for (String name : rheaders.names()) {
-        String value = rheaders.get(name);
-        if (value != null) {
-          outputHeaders.put(name, value);
-        } else {
-          outputHeaders.put(name, "");
-        }
-      }
+    // Wait for all in-flight parts to finish.
+    slots.acquire(parallelParts);
 
-      String responseHeaders = gson.toJson(outputHeaders);
-      String responseString = "";
-      if (body != null) {
-        responseString = body.string();
+    Object partFailure = failure.get();
+    if (isCancelled || partFailure != null) {
+      for (Call partCall : partCalls) {
+        partCall.cancel();
       }
+    }
 
-      if (!response.isSuccessful()) {
+    if (isCancelled) {
+      return Result.failure();
+    }
+
+    if (partFailure instanceof IOException) {
+      throw (IOException) partFailure;
+    }
+
+    if (partFailure instanceof Response) {
+      return handleResponse((Response) partFailure);
+    }
+
+    List<Map<String, Object>> parts = new ArrayList<>();
+    for (int i = 0; i < partCount; i++) {
+      if (etags[i] == null) {
+        // The server could not assemble the file without it.
         return Result.failure(
             createOutputErrorData(
-                UploadStatus.FAILED, statusCode, "upload_error", responseString, null));
+                UploadStatus.FAILED,
+                DEFAULT_ERROR_STATUS_CODE,
+                "missing_etag",
+                "Part " + (i + 1) + " was stored without an ETag",
+                null));
       }
 
-      Data.Builder builder =
-          new Data.Builder()
-              .putString(EXTRA_ID, getId().toString())
-              .putInt(EXTRA_STATUS, UploadStatus.COMPLETE)
-              .putInt(EXTRA_STATUS_CODE, statusCode)
-              .putString(EXTRA_HEADERS, responseHeaders);
+      Map<String, Object> part = new HashMap<>();
+      part.put("partNumber", i + 1);
+      part.put("etag", etags[i]);
+      parts.add(part);
+    }
+
+    Map<String, Object> completion = new HashMap<>();
+    completion.put("parts", parts);
+
+    RequestBody completionBody =
+        RequestBody.create(
+            new Gson().toJson(completion), MediaType.parse("application/json; charset=utf-8"));
+    Request request = buildRequest(newRequestBuilder(headers), "POST", completeUrl, completionBody);
+
+    call = client.newCall(request);
+    return handleResponse(call.execute());
+  }
+
+  private static String getContentRange(long offset, long length, long total) {
+    if (length <= 0) {
+      return "bytes */" + total;
+    }
+    return "bytes " + offset + "-" + (offset + length - 1) + "/" + total;
+  }
 
-      if (hasJsonResponse) {
-        builder.putString(EXTRA_RESPONSE, responseString);
+  /**
+   * Reads the offset confirmed by the server, either through a {@code Range: bytes=0-N} or an
+   * {@code Upload-Offset: N} response header. Falls back to the end of the chunk just sent.
+   */
+  private static long getAcknowledgedOffset(Response response, long fallback) {
+    try {
+      String uploadOffset = response.header("Upload-Offset");
+      if (uploadOffset != null) {
+        return Long.parseLong(uploadOffset.trim());
       }
 
-      Data outputData;
-      try {
-        outputData = builder.build();
-      } catch (IllegalStateException e) {
-        if (responseString.isEmpty()) {
-          // Managed to break it with an empty string.
-          throw e;
+      String range = response.header("Range");
+      if (range != null) {
+        int separator = range.lastIndexOf('-');
+        if (separator != -1) {
+          return Long.parseLong(range.substring(separator + 1).trim()) + 1;
         }
+      }
+    } catch (NumberFormatException ex) {
+      Log.d(TAG, "Unable to parse acknowledged offset", ex);
+    }
 
-        Log.d(
-            TAG,
-            "IllegalStateException while building a outputData object. Replace response with"
-                + " on-disk reference.");
-        builder.putString(EXTRA_RESPONSE, null);
+    return fallback;
+  }
+
+  private Request.Builder newRequestBuilder(Map<String, String> headers) {
+    Request.Builder requestBuilder = new Request.Builder().tag(UploadMetrics.class, metrics);
 
-        File responseFile = writeResponseToTemporaryFile(context, responseString);
-        if (responseFile != null) {
-          builder.putString(EXTRA_RESPONSE_FILE, responseFile.getAbsolutePath());
+    requestBuilder.addHeader("Accept", "*/*");
+
+    if (headers != null) {
+      for (String key : headers.keySet()) {
+        String header = headers.get(key);
+        if (header != null && !header.isEmpty()) {
+          requestBuilder = requestBuilder.header(key, header);
         }
+      }
+    }
+
+    return requestBuilder;
+  }
+
+  private Request buildRequest(
+      Request.Builder requestBuilder, String method, String url, RequestBody requestBody) {
+    switch (method.toUpperCase()) {
+      case "PUT":
+        return requestBuilder.url(url).put(requestBody).build();
+      case "PATCH":
+        return requestBuilder.url(url).patch(requestBody).build();
+      default:
+        return requestBuilder.url(url).post(requestBody).build();
+    }
+  }
 
-        outputData = builder.build();
+  private static String encodeHeaders(Headers headers) {
+    Map<String, String> outputHeaders = new HashMap<>();
+
+    for (String name : headers.names()) {
+      String value = headers.get(name);
+      if (value != null) {
+        outputHeaders.put(name, value);
+      } else {
+        outputHeaders.put(name, "");
       }
+    }
 
-      return Result.success(outputData);
-    } catch (ProtocolException ex) {
-      if (isCancelled) {
-        return Result.failure();
+    return TaskCodec.encode(TaskCodec.STRING_MAP, outputHeaders);
+  }
+
+  private Result handleResponse(Response response) throws IOException {
+    int statusCode = response.code();
+    Headers rheaders = response.headers();
+
+    boolean hasJsonResponse = true;
+
+    String responseContentType = rheaders.get("content-type");
+
+    ResponseBody body = response.body();
+
+    hasJsonResponse =
+        responseContentType != null && responseContentType.contains("json") && body != null;
+
+    String responseHeaders = encodeHeaders(rheaders);
+    String responseString = "";
+    File responseFile = null;
+    boolean tooLarge = false;
+
+    try {
+      if (!response.isSuccessful()) {
+        if (body != null) {
+          responseString = readResponsePrefix(body.source(), responseMemoryThreshold);
+        }
+      } else if (hasJsonResponse) {
+        final long contentLength = body.contentLength();
+        if (maxResponseSize > 0 && contentLength > maxResponseSize) {
+          tooLarge = true;
+        } else {
+          final BufferedSource source = body.source();
+          if (contentLength > responseMemoryThreshold
+              || (contentLength == -1 && source.request(responseMemoryThreshold + 1))) {
+            responseFile = writeResponseToTemporaryFile(context, source);
+          } else {
+            responseString = body.string();
+          }
+        }
       }
-      return handleException(context, ex, "protocol");
-    } catch (JsonIOException ex) {
-      return handleException(context, ex, "json_error");
-    } catch (UnknownHostException ex) {
-      return handleException(context, ex, "unknown_host");
-    } catch (IOException ex) {
-      return handleException(context, ex, "io_error");
-    } catch (Exception ex) {
-      return handleException(context, ex, "upload error");
+    } catch (ResponseTooLargeException e) {
+      tooLarge = true;
     } finally {
-      call = null;
+      response.close();
+    }
+
+    // The call only ends once the response is closed, the metrics are complete from here on.
+    if (tooLarge) {
+      return Result.failure(createResponseTooLargeErrorData(statusCode));
     }
+
+    if (!response.isSuccessful()) {
+      return Result.failure(
+          createOutputErrorData(
+              UploadStatus.FAILED, statusCode, "upload_error", responseString, null));
+    }
+
+    Data.Builder builder =
+        new Data.Builder()
+            .putString(EXTRA_ID, getId().toString())
+            .putInt(EXTRA_STATUS, UploadStatus.COMPLETE)
+            .putInt(EXTRA_STATUS_CODE, statusCode)
+            .putString(EXTRA_HEADERS, responseHeaders)
+            .putString(EXTRA_METRICS, metrics.encode());
+
+    if (responseFile != null) {
+      builder.putString(EXTRA_RESPONSE_FILE, responseFile.getAbsolutePath());
+    } else if (hasJsonResponse) {
+      builder.putString(EXTRA_RESPONSE, responseString);
+    }
+
+    Data outputData;
+    try {
+      outputData = builder.build();
+    } catch (IllegalStateException e) {
+      if (responseString.isEmpty()) {
+        // Managed to break it with an empty string.
+        throw e;
+      }
+
+      Log.d(
+          TAG,
+          "IllegalStateException while building a outputData object. Replace response with"
+              + " on-disk reference.");
+      builder.putString(EXTRA_RESPONSE, null);
+
+      responseFile = writeResponseToTemporaryFile(context, responseString);
+      if (responseFile != null) {
+        builder.putString(EXTRA_RESPONSE_FILE, responseFile.getAbsolutePath());
+      }
+
+      outputData = builder.build();
+    }
+
+    // Responses stored on disk are not kept, they would be gone by the next duplicate.
+    recordResult(statusCode, outputData.getString(EXTRA_RESPONSE), responseHeaders);
+    return Result.success(outputData);
+  }
+
+  private Data createResponseTooLargeErrorData(int statusCode) {
+    return createOutputErrorData(
+        UploadStatus.FAILED,
+        statusCode,
+        "response_too_large",
+        "Response exceeds the maximum size of " + maxResponseSize + " bytes",
+        null);
+  }
+
+  /** Reads at most {@code limit} bytes of the response, e.g. to be used as an error message. */
+  private static String readResponsePrefix(BufferedSource source, long limit) throws IOException {
+    source.request(limit);
+    return source.readUtf8(Math.min(limit, source.getBuffer().size()));
+  }
+
+  /**
+   * Streams the response straight to a temporary file, without holding it in memory. Aborts with
+   * {@link ResponseTooLargeException} once the configured maximum response size is exceeded.
+   */
+  private File writeResponseToTemporaryFile(Context context, BufferedSource source)
+      throws IOException {
+    File tempFile = File.createTempFile("flutter_uploader", null, context.getCacheDir());
+
+    try (BufferedSink sink = Okio.buffer(Okio.sink(tempFile))) {
+      long total = 0;
+      long read;
+      while ((read = source.read(sink.getBuffer(), RESPONSE_READ_SIZE)) != -1) {
+        total += read;
+        if (maxResponseSize > 0 && total > maxResponseSize) {
+          throw new ResponseTooLargeException();
+        }
+        sink.emitCompleteSegments();
+      }
+    } catch (IOException e) {
+      tempFile.delete();
+      throw e;
+    }
+
+    return tempFile;
+  }
+
+  /** Reads a task input, either from the manifest or from the input data. */
+  @Nullable
+  private String getPayload(@Nullable Map<String, String> manifest, String key) {
+    return manifest != null ? manifest.get(key) : getInputData().getString(key);
+  }
+
+  /**
+   * Decodes a value written by {@link TaskCodec}. Falls back to JSON for work which has been
+   * enqueued by earlier versions of the plugin.
+   */
+  @Nullable
+  public static <T> T decodeData(
+      @Nullable String value, TaskCodec.Adapter<T> adapter, Type legacyType) {
+    if (value == null) {
+      return null;
+    }
+
+    if (TaskCodec.isEncoded(value)) {
+      return TaskCodec.decode(adapter, value);
+    }
+
+    return new Gson().fromJson(value, legacyType);
   }
 
   private File writeResponseToTemporaryFile(Context context, String body) {
@@ -348,40 +950,6 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
     return null;
   }
 
-  private void startEngine() {
-    long callbackHandle = SharedPreferenceHelper.getCallbackHandle(context);
-
-    Log.d(TAG, "callbackHandle: " + callbackHandle);
-
-    if (callbackHandle != -1L && engine == null) {
-      engine = new FlutterEngine(context);
-      FlutterLoader flutterLoader = FlutterInjector.instance().flutterLoader();
-      flutterLoader.ensureInitializationComplete(context, null);
-
-      FlutterCallbackInformation callbackInfo =
-          FlutterCallbackInformation.lookupCallbackInformation(callbackHandle);
-      String dartBundlePath = flutterLoader.findAppBundlePath();
-
-      engine
-          .getDartExecutor()
-          .executeDartCallback(
-              new DartExecutor.DartCallback(context.getAssets(), dartBundlePath, callbackInfo));
-    }
-  }
-
-  private void stopEngine() {
-    Log.d(TAG, "Destroying worker engine.");
-
-    if (engine != null) {
-      try {
-        engine.destroy();
-      } catch (Throwable e) {
-        Log.e(TAG, "Can not destroy engine", e);
-      }
-      engine = null;
-    }
-  }
-
   private Result handleException(Context context, Exception ex, String code) {
     Log.e(TAG, "exception encountered", ex);
 
@@ -397,22 +965,19 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
             getStacktraceAsStringList(ex.getStackTrace())));
   }
 
-  private String GetMimeType(String url) {
-    String type = "application/octet-stream";
-    String extension = MimeTypeMap.getFileExtensionFromUrl(url);
-    try {
-      if (extension != null && !extension.isEmpty()) {
-        String mimeType =
-            MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase());
-        if (mimeType != null && !mimeType.isEmpty()) {
-          type = mimeType;
-        }
-      }
-    } catch (Exception ex) {
-      Log.d(TAG, "UploadWorker - GetMimeType", ex);
+  private String GetMimeType(FileItem item, UploadSource source) {
+    // Resolved at enqueue time, unless the task was enqueued by an earlier version.
+    return item.getMimeType() != null ? item.getMimeType() : source.getMimeType();
+  }
+
+  private long GetSize(FileItem item, UploadSource source) {
+    if (source.getFile() != null || item.getSize() == FileItem.UNKNOWN_SIZE) {
+      return source.length();
     }
 
-    return type;
+    // Content providers are not queried again, the size was resolved at enqueue time. A content
+    // which is longer by now fails in FileRangeRequestBody, one which is shorter ends early.
+    return item.getSize();
   }
 
   private MultipartBody.Builder prepareRequest(Map<String, String> parameters, String boundary) {
@@ -449,6 +1014,7 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
         .putString(UploadWorker.EXTRA_ERROR_CODE, code)
         .putString(UploadWorker.EXTRA_ERROR_MESSAGE, message)
         .putStringArray(UploadWorker.EXTRA_ERROR_DETAILS, details)
+        .putString(UploadWorker.EXTRA_METRICS, metrics.encode())
         .build();
   }
 
@@ -458,8 +1024,11 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
       return;
     }
 
-    double p = ((double) bytesWritten / (double) contentLength) * 100;
-    int progress = (int) Math.round(p);
+    int progress =
+        progressCoalescer.onProgress(bytesWritten, contentLength, SystemClock.elapsedRealtime());
+    if (progress == ProgressCoalescer.SKIP) {
+      return;
+    }
 
     Log.d(
         TAG,
@@ -481,9 +1050,16 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
     Log.d(TAG, "UploadWorker - Stopped");
     try {
       isCancelled = true;
+      if (job != null && scheduler.cancel(job)) {
+        // The job never ran and will not release the engine.
+        engineManager.release();
+      }
       if (call != null && !call.isCanceled()) {
         call.cancel();
       }
+      for (Call partCall : partCalls) {
+        partCall.cancel();
+      }
     } catch (Exception ex) {
       Log.d(TAG, "Upload Request cancelled", ex);
     }
@@ -519,4 +1095,29 @@ public class UploadWorker extends ListenableWorker implements CountProgressListe
 
     return output.toArray(new String[0]);
   }
+
+  /** Translates the progress of a single chunk into the progress of the whole file. */
+  private static class ChunkProgressListener implements CountProgressListener {
+    private final CountProgressListener delegate;
+    private final long offset;
+    private final long total;
+
+    ChunkProgressListener(CountProgressListener delegate, long offset, long total) {
+      this.delegate = delegate;
+      this.offset = offset;
+      this.total = total;
+    }
+
+    @Override
+    public void OnProgress(String taskId, long bytesWritten, long contentLength) {
+      delegate.OnProgress(taskId, offset + bytesWritten, total);
+    }
+
+    @Override
+    public void OnError(String taskId, String code, String message) {
+      delegate.OnError(taskId, code, message);
+    }
+  }
+
+  private static class ResponseTooLargeException extends IOException {}
 }
@@ -3,28 +3,59 @@ package com.bluechilli.flutteruploader.plugin;
 import androidx.annotation.Nullable;
 import io.flutter.plugin.common.EventChannel.EventSink;
 import io.flutter.plugin.common.EventChannel.StreamHandler;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A StreamHandler which manages a map of unique items and caches their last status.
  *
+ * <p>The cache is bounded: once {@code capacity} is exceeded, the least recently updated item is
+ * evicted. Items in a terminal state (completed, failed) are dropped as soon as they have been
+ * delivered to a listener. New listeners receive in-flight items first.
+ *
  * @param <T>
  */
 public class CachingStreamHandler<T> implements StreamHandler {
+  public static final int DEFAULT_CAPACITY = 1000;
+
   @Nullable private EventSink eventSink;
 
-  Map<String, T> cache = new HashMap<>();
+  private int capacity = DEFAULT_CAPACITY;
+
+  final Map<String, Entry<T>> cache =
+      new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+          return size() > capacity;
+        }
+      };
 
   @Override
   public void onListen(Object arguments, EventSink events) {
     eventSink = events;
 
-    if (!cache.isEmpty()) {
-      for (T item : cache.values()) {
-        events.success(item);
+    if (cache.isEmpty()) {
+      return;
+    }
+
+    List<T> terminalItems = new ArrayList<>();
+    for (Iterator<Entry<T>> it = cache.values().iterator(); it.hasNext(); ) {
+      Entry<T> entry = it.next();
+      if (entry.terminal) {
+        terminalItems.add(entry.item);
+        it.remove();
+      } else {
+        events.success(entry.item);
       }
     }
+
+    for (T item : terminalItems) {
+      events.success(item);
+    }
   }
 
   @Override
@@ -32,15 +63,65 @@ public class CachingStreamHandler<T> implements StreamHandler {
     eventSink = null;
   }
 
+  public void setCapacity(int capacity) {
+    this.capacity = Math.max(1, capacity);
+  }
+
   public void add(String id, T args) {
+    add(id, args, false);
+  }
+
+  /**
+   * Delivers an item to the listener and caches it. Terminal items are only cached until they have
+   * been delivered.
+   */
+  public void add(String id, T args, boolean terminal) {
     if (eventSink != null) {
       eventSink.success(args);
+
+      if (terminal) {
+        cache.remove(id);
+        return;
+      }
     }
 
-    cache.put(id, args);
+    cache.put(id, new Entry<>(args, terminal));
+  }
+
+  /**
+   * Delivers all items to the listener as a single list and caches them, except for delivered
+   * items whose ids are in {@code terminalIds}.
+   */
+  public void addAll(Map<String, T> items, Set<String> terminalIds) {
+    if (eventSink != null) {
+      eventSink.success(new ArrayList<>(items.values()));
+    }
+
+    for (Map.Entry<String, T> item : items.entrySet()) {
+      boolean terminal = terminalIds.contains(item.getKey());
+      if (terminal && eventSink != null) {
+        cache.remove(item.getKey());
+      } else {
+        cache.put(item.getKey(), new Entry<>(item.getValue(), terminal));
+      }
+    }
+  }
+
+  public void remove(String id) {
+    cache.remove(id);
   }
 
   public void clear() {
     cache.clear();
   }
+
+  private static class Entry<T> {
+    final T item;
+    final boolean terminal;
+
+    Entry(T item, boolean terminal) {
+      this.item = item;
+      this.terminal = terminal;
+    }
+  }
 }
@@ -0,0 +1,101 @@
+package com.bluechilli.flutteruploader.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the latest event of every task over a time window and hands them to a {@link
+ * CachingStreamHandler} as a single batch. A batch is delivered early once events of {@code
+ * maxBatchSize} tasks are pending. Must be used from the main thread.
+ *
+ * @param <T>
+ */
+public class EventBatcher<T> {
+  private final CachingStreamHandler<T> streamHandler;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Map<String, T> pending = new LinkedHashMap<>();
+  private final Set<String> terminalIds = new HashSet<>();
+  private final Runnable flushRunnable = this::flush;
+
+  private long windowMillis = 0;
+  private int maxBatchSize = 0;
+  private boolean scheduled = false;
+
+  public EventBatcher(CachingStreamHandler<T> streamHandler) {
+    this.streamHandler = streamHandler;
+  }
+
+  /** A window of zero (or less) disables batching. Pending events are delivered immediately. */
+  public void setWindow(long windowMillis) {
+    this.windowMillis = windowMillis;
+
+    if (!isEnabled()) {
+      flush();
+    }
+  }
+
+  public boolean isEnabled() {
+    return windowMillis > 0;
+  }
+
+  /** Delivers the pending events once there are events of this many tasks, 0 = no limit. */
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = Math.max(0, maxBatchSize);
+  }
+
+  public void add(String id, T item) {
+    add(id, item, false);
+  }
+
+  /** See {@link CachingStreamHandler#add(String, Object, boolean)} for terminal items. */
+  public void add(String id, T item, boolean terminal) {
+    pending.put(id, item);
+    if (terminal) {
+      terminalIds.add(id);
+    } else {
+      terminalIds.remove(id);
+    }
+
+    if (maxBatchSize > 0 && pending.size() >= maxBatchSize) {
+      flush();
+      return;
+    }
+
+    if (!scheduled) {
+      scheduled = true;
+      handler.postDelayed(flushRunnable, windowMillis);
+    }
+  }
+
+  public void flush() {
+    handler.removeCallbacks(flushRunnable);
+    scheduled = false;
+
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    Map<String, T> batch = new LinkedHashMap<>(pending);
+    Set<String> terminalBatchIds = new HashSet<>(terminalIds);
+    pending.clear();
+    terminalIds.clear();
+    streamHandler.addAll(batch, terminalBatchIds);
+  }
+
+  /** Drops the pending event of a task, e.g. progress which was overtaken by its result. */
+  public void remove(String id) {
+    pending.remove(id);
+    terminalIds.remove(id);
+  }
+
+  public void clear() {
+    handler.removeCallbacks(flushRunnable);
+    scheduled = false;
+    pending.clear();
+    terminalIds.clear();
+  }
+}
@@ -14,14 +14,16 @@ public interface StatusListener {
       int statusCode,
       String code,
       String message,
-      @Nullable String[] details);
+      @Nullable String[] details,
+      @Nullable Map<String, Object> metrics);
 
   void onCompleted(
       String id,
       int status,
       int statusCode,
       String response,
-      @Nullable Map<String, String> headers);
+      @Nullable Map<String, String> headers,
+      @Nullable Map<String, Object> metrics);
 
   void onWorkPruned();
 }
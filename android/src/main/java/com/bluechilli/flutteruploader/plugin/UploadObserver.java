@@ -1,28 +1,49 @@
 package com.bluechilli.flutteruploader.plugin;
 
 import android.text.TextUtils;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.Observer;
 import androidx.work.Data;
 import androidx.work.WorkInfo;
+import com.bluechilli.flutteruploader.TaskCodec;
+import com.bluechilli.flutteruploader.UploadMetrics;
 import com.bluechilli.flutteruploader.UploadStatus;
 import com.bluechilli.flutteruploader.UploadWorker;
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class UploadObserver implements Observer<List<WorkInfo>> {
   private final WeakReference<StatusListener> listener;
-  private final Gson gson = new Gson();
+  private static final Type LEGACY_HEADERS_TYPE =
+      new TypeToken<Map<String, String>>() {}.getType();
+
+  /** The last dispatched state of every known task, used to skip unchanged tasks. */
+  private final Map<String, Snapshot> snapshots = new HashMap<>();
+
+  /** Ids of the tasks whose result was delivered, shared with earlier observers, or null. */
+  @Nullable private Set<String> deliveredResults;
 
   public UploadObserver(StatusListener listener) {
     this.listener = new WeakReference<>(listener);
   }
 
+  /**
+   * Shares the ids of delivered results with other observers, e.g. those of earlier engines of the
+   * background handler, so that each result is delivered once. Must be set before the first
+   * change.
+   */
+  public void setDeliveredResults(@Nullable Set<String> deliveredResults) {
+    this.deliveredResults = deliveredResults;
+  }
+
   @Override
   public void onChanged(List<WorkInfo> workInfoList) {
     StatusListener listener = this.listener.get();
@@ -31,8 +52,27 @@ public class UploadObserver implements Observer<List<WorkInfo>> {
       return;
     }
 
+    Set<String> ids = new HashSet<>();
+
     for (WorkInfo info : workInfoList) {
       String id = info.getId().toString();
+      ids.add(id);
+
+      Data progress = info.getProgress();
+      Snapshot snapshot =
+          new Snapshot(
+              info.getState(), progress.getInt("status", -1), progress.getInt("progress", -1));
+      Snapshot previous = snapshots.put(id, snapshot);
+
+      if (previous != null && (previous.state.isFinished() || previous.equals(snapshot))) {
+        // Nothing changed, or the result has already been delivered.
+        continue;
+      }
+
+      if (deliveredResults != null && snapshot.state.isFinished() && !deliveredResults.add(id)) {
+        // Delivered by an earlier observer.
+        continue;
+      }
 
       switch (info.getState()) {
         case ENQUEUED:
@@ -41,12 +81,7 @@ public class UploadObserver implements Observer<List<WorkInfo>> {
           }
         case RUNNING:
           {
-            Data progress = info.getProgress();
-
-            listener.onUpdateProgress(
-                info.getId().toString(),
-                progress.getInt("status", -1),
-                progress.getInt("progress", -1));
+            listener.onUpdateProgress(info.getId().toString(), snapshot.status, snapshot.progress);
           }
           break;
         case FAILED:
@@ -57,30 +92,40 @@ public class UploadObserver implements Observer<List<WorkInfo>> {
             String code = outputData.getString(UploadWorker.EXTRA_ERROR_CODE);
             String errorMessage = outputData.getString(UploadWorker.EXTRA_ERROR_MESSAGE);
             String[] details = outputData.getStringArray(UploadWorker.EXTRA_ERROR_DETAILS);
+            Map<String, Object> metrics =
+                UploadMetrics.decode(outputData.getString(UploadWorker.EXTRA_METRICS));
 
-            listener.onFailed(id, failedStatus, statusCode, code, errorMessage, details);
+            listener.onFailed(id, failedStatus, statusCode, code, errorMessage, details, metrics);
           }
           break;
         case CANCELLED:
-          listener.onFailed(id, UploadStatus.CANCELED, 500, "flutter_upload_cancelled", null, null);
+          listener.onFailed(
+              id, UploadStatus.CANCELED, 500, "flutter_upload_cancelled", null, null, null);
           break;
         case SUCCEEDED:
           {
             final Data outputData = info.getOutputData();
             int status = outputData.getInt(UploadWorker.EXTRA_STATUS, UploadStatus.COMPLETE);
             int statusCode = outputData.getInt(UploadWorker.EXTRA_STATUS_CODE, 500);
-            Map<String, String> headers = null;
-            Type type = new TypeToken<Map<String, String>>() {}.getType();
-            String headerJson = outputData.getString(UploadWorker.EXTRA_HEADERS);
-            if (headerJson != null) {
-              headers = gson.fromJson(headerJson, type);
-            }
+            Map<String, String> headers =
+                UploadWorker.decodeData(
+                    outputData.getString(UploadWorker.EXTRA_HEADERS),
+                    TaskCodec.STRING_MAP,
+                    LEGACY_HEADERS_TYPE);
             String response = extractResponse(outputData);
-            listener.onCompleted(id, status, statusCode, response, headers);
+            Map<String, Object> metrics =
+                UploadMetrics.decode(outputData.getString(UploadWorker.EXTRA_METRICS));
+            listener.onCompleted(id, status, statusCode, response, headers, metrics);
           }
           break;
       }
     }
+
+    // Forget about pruned tasks.
+    snapshots.keySet().retainAll(ids);
+    if (deliveredResults != null) {
+      deliveredResults.retainAll(ids);
+    }
   }
 
   String extractResponse(Data outputData) {
@@ -105,4 +150,29 @@ public class UploadObserver implements Observer<List<WorkInfo>> {
 
     return response;
   }
+
+  private static class Snapshot {
+    final WorkInfo.State state;
+    final int status;
+    final int progress;
+
+    Snapshot(WorkInfo.State state, int status, int progress) {
+      this.state = state;
+      this.status = status;
+      this.progress = progress;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Snapshot snapshot = (Snapshot) o;
+      return status == snapshot.status && progress == snapshot.progress && state == snapshot.state;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * state.hashCode() + status) + progress;
+    }
+  }
 }
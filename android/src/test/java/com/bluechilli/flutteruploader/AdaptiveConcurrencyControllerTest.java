@@ -0,0 +1,59 @@
+package com.bluechilli.flutteruploader;
+
+import static com.bluechilli.flutteruploader.AdaptiveConcurrencyController.DECREASE_SAMPLES;
+import static com.bluechilli.flutteruploader.AdaptiveConcurrencyController.nextLimit;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyControllerTest {
+  private static final int MAX = 8;
+  private static final long BASELINE = 1000;
+
+  @Test
+  public void increasesWhileThroughputKeepsUp() {
+    assertEquals(4, nextLimit(3, MAX, true, BASELINE, BASELINE, 0, 0));
+    assertEquals(4, nextLimit(3, MAX, true, BASELINE, 2 * BASELINE, 0, 0));
+  }
+
+  @Test
+  public void keepsLimitBelowBaseline() {
+    assertEquals(3, nextLimit(3, MAX, true, BASELINE, BASELINE - 1, 0, 0));
+  }
+
+  @Test
+  public void ignoresSingleDip() {
+    assertEquals(4, nextLimit(4, MAX, true, BASELINE, 0, DECREASE_SAMPLES - 1, 0));
+  }
+
+  @Test
+  public void halvesAfterConsecutiveLowSamples() {
+    assertEquals(2, nextLimit(4, MAX, true, BASELINE, 0, DECREASE_SAMPLES, 0));
+    assertEquals(2, nextLimit(5, MAX, true, BASELINE, 0, DECREASE_SAMPLES + 1, 0));
+  }
+
+  @Test
+  public void holdsAfterDecrease() {
+    assertEquals(2, nextLimit(2, MAX, true, BASELINE, 0, DECREASE_SAMPLES, 1));
+    assertEquals(2, nextLimit(2, MAX, true, BASELINE, 2 * BASELINE, 0, 1));
+  }
+
+  @Test
+  public void holdsWithoutBaseline() {
+    assertEquals(3, nextLimit(3, MAX, true, 0, BASELINE, 0, 0));
+  }
+
+  @Test
+  public void holdsWithoutQueuedUploads() {
+    assertEquals(3, nextLimit(3, MAX, false, BASELINE, 2 * BASELINE, 0, 0));
+    assertEquals(3, nextLimit(3, MAX, false, BASELINE, 0, DECREASE_SAMPLES, 0));
+  }
+
+  @Test
+  public void clampsToRange() {
+    assertEquals(MAX, nextLimit(MAX, MAX, true, BASELINE, 2 * BASELINE, 0, 0));
+    assertEquals(MAX, nextLimit(MAX + 4, MAX, false, BASELINE, BASELINE, 0, 0));
+    assertEquals(1, nextLimit(1, MAX, true, BASELINE, 0, DECREASE_SAMPLES, 0));
+    assertEquals(1, nextLimit(0, MAX, false, BASELINE, BASELINE, 0, 0));
+  }
+}
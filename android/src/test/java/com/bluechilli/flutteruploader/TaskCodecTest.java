@@ -0,0 +1,111 @@
+package com.bluechilli.flutteruploader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TaskCodecTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void roundTripsStringMaps() {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("name", "Zo\u00eb \u65e5\u672c\u8a9e");
+    map.put("emoji", "\ud83d\ude00");
+    map.put("empty", "");
+    map.put("missing", null);
+    map.put("long", repeat('x', 5000));
+
+    assertEquals(map, TaskCodec.decode(TaskCodec.STRING_MAP, encode(map)));
+  }
+
+  @Test
+  public void roundTripsFileItems() {
+    List<FileItem> files = new ArrayList<>();
+    files.add(new FileItem("/data/\u00e4.jpg", "file").setSize(300).setMimeType("image/jpeg"));
+    files.add(new FileItem("content://media/1"));
+
+    List<FileItem> decoded =
+        TaskCodec.decode(TaskCodec.FILE_ITEMS, TaskCodec.encode(TaskCodec.FILE_ITEMS, files));
+
+    assertEquals("/data/\u00e4.jpg", decoded.get(0).getPath());
+    assertEquals("file", decoded.get(0).getFieldname());
+    assertEquals(300, decoded.get(0).getSize());
+    assertEquals("image/jpeg", decoded.get(0).getMimeType());
+    assertEquals("content://media/1", decoded.get(1).getPath());
+    assertNull(decoded.get(1).getFieldname());
+    assertEquals(FileItem.UNKNOWN_SIZE, decoded.get(1).getSize());
+    assertNull(decoded.get(1).getMimeType());
+  }
+
+  @Test
+  public void storesTextAtItsUtf8Size() throws IOException {
+    String value = "Zo\u00eb \u65e5\u672c\u8a9e";
+    String encoded = encode(Collections.singletonMap("k", value));
+
+    // Version, entry count and one length per string take a single byte each.
+    assertEquals(4 + 1 + value.getBytes(UTF_8).length, getStoredSize(encoded));
+  }
+
+  @Test
+  public void decodesVersion2() {
+    Map<String, String> map =
+        TaskCodec.decode(
+            TaskCodec.STRING_MAP,
+            "\u0002\u0002\u0005name\u000cZo\u00c3\u00ab \u00e6\u0097\u00a5\u00e6\u009c\u00ac"
+                + "\u0004tag\u0000");
+
+    assertEquals("Zo\u00eb \u65e5\u672c", map.get("name"));
+    assertTrue(map.containsKey("tag"));
+    assertNull(map.get("tag"));
+
+    List<FileItem> files =
+        TaskCodec.decode(
+            TaskCodec.FILE_ITEMS,
+            "\u0002\u0001\r/data/\u00c3\u00a4.jpg\u0005file\u00ad\u0002\u000bimage/jpeg");
+
+    assertEquals("/data/\u00e4.jpg", files.get(0).getPath());
+    assertEquals(300, files.get(0).getSize());
+    assertEquals("image/jpeg", files.get(0).getMimeType());
+  }
+
+  @Test
+  public void rejectsJson() {
+    assertFalse(TaskCodec.isEncoded("{\"name\":\"value\"}"));
+    assertFalse(TaskCodec.isEncoded("[]"));
+    assertFalse(TaskCodec.isEncoded(""));
+    assertFalse(TaskCodec.isEncoded(null));
+  }
+
+  private static String encode(Map<String, String> map) {
+    return TaskCodec.encode(TaskCodec.STRING_MAP, map);
+  }
+
+  /** The size of a string in WorkManager {@code Data}, which stores it as modified UTF-8. */
+  private static int getStoredSize(String value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(value);
+    }
+    return bytes.size() - 2;
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
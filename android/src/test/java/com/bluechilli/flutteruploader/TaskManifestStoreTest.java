@@ -0,0 +1,53 @@
+package com.bluechilli.flutteruploader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.work.Data;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class TaskManifestStoreTest {
+
+  @Test
+  public void measuresAsciiText() {
+    Map<String, Object> values = new HashMap<>();
+    values.put("url", "https://example.com");
+    values.put("tag", null);
+    values.put("timeout", 3600);
+
+    assertEquals(3 + 19 + 3 + 7 + 8, TaskManifestStore.getStoredSize(values));
+  }
+
+  @Test
+  public void measuresNonAsciiTextInBytes() {
+    assertEquals(
+        1 + 2 + 3 + 6,
+        TaskManifestStore.getStoredSize(Collections.singletonMap("k", "\u00eb\u65e5\ud83d\ude00")));
+  }
+
+  @Test
+  public void largeNonAsciiPayloadDoesNotFitInline() {
+    char[] text = new char[3500];
+    Arrays.fill(text, '\u65e5');
+    String encoded =
+        TaskCodec.encode(
+            TaskCodec.STRING_MAP, Collections.singletonMap("caption", new String(text)));
+    Map<String, String> payload = Collections.singletonMap(UploadWorker.ARG_DATA, encoded);
+
+    // Counted in chars, the payload looks small enough to be stored inline.
+    assertTrue(encoded.length() < 4 * 1024);
+    assertTrue(TaskManifestStore.getStoredSize(payload) > 10 * 1024);
+
+    try {
+      new Data.Builder().putString(UploadWorker.ARG_DATA, encoded).build();
+      fail("Data accepted " + TaskManifestStore.getStoredSize(payload) + " bytes");
+    } catch (IllegalStateException expected) {
+      // Exceeds the 10 KB limit of Data.
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.bluechilli.flutteruploaderexample;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.bluechilli.flutteruploader.UploadStatus;
+import com.bluechilli.flutteruploader.plugin.CachingStreamHandler;
+import io.flutter.plugin.common.EventChannel.EventSink;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Measures the event cache of the plugin's event channels at its default capacity. */
+@RunWith(AndroidJUnit4.class)
+public class CachingStreamHandlerBenchmark {
+  private static final int ITEM_COUNT = CachingStreamHandler.DEFAULT_CAPACITY;
+
+  @Rule public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private final CountingEventSink sink = new CountingEventSink();
+
+  /** Replays cached progress to a new listener, which keeps the items cached. */
+  @Test
+  public void replayProgress() {
+    CachingStreamHandler<Map<String, Object>> handler = new CachingStreamHandler<>();
+    fill(handler, 0);
+
+    BenchmarkState state = benchmarkRule.getState();
+    while (state.keepRunning()) {
+      handler.onListen(null, sink);
+      handler.onCancel(null);
+    }
+  }
+
+  /** Replays a cache of which half the items are results, which are dropped once delivered. */
+  @Test
+  public void replayResults() {
+    CachingStreamHandler<Map<String, Object>> handler = new CachingStreamHandler<>();
+
+    BenchmarkState state = benchmarkRule.getState();
+    while (state.keepRunning()) {
+      state.pauseTiming();
+      handler.clear();
+      fill(handler, ITEM_COUNT / 2);
+      state.resumeTiming();
+
+      handler.onListen(null, sink);
+      handler.onCancel(null);
+    }
+  }
+
+  /** Delivers and caches progress while a listener is attached. */
+  @Test
+  public void addProgress() {
+    CachingStreamHandler<Map<String, Object>> handler = new CachingStreamHandler<>();
+    handler.onListen(null, sink);
+
+    String[] ids = new String[ITEM_COUNT];
+    for (int i = 0; i < ITEM_COUNT; i++) {
+      ids[i] = "task" + i;
+    }
+    Map<String, Object> event = progress("task", 50);
+
+    BenchmarkState state = benchmarkRule.getState();
+    int i = 0;
+    while (state.keepRunning()) {
+      handler.add(ids[i], event);
+      i = (i + 1) % ITEM_COUNT;
+    }
+  }
+
+  private static void fill(CachingStreamHandler<Map<String, Object>> handler, int resultCount) {
+    for (int i = 0; i < ITEM_COUNT; i++) {
+      String id = "task" + i;
+      if (i < resultCount) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("taskId", id);
+        result.put("status", UploadStatus.COMPLETE);
+        result.put("statusCode", 200);
+        handler.add(id, result, true);
+      } else {
+        handler.add(id, progress(id, i % 100));
+      }
+    }
+  }
+
+  private static Map<String, Object> progress(String id, int progress) {
+    Map<String, Object> args = new HashMap<>();
+    args.put("taskId", id);
+    args.put("status", UploadStatus.RUNNING);
+    args.put("progress", progress);
+    return args;
+  }
+
+  private static class CountingEventSink implements EventSink {
+    int events;
+
+    @Override
+    public void success(Object event) {
+      events++;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      events++;
+    }
+
+    @Override
+    public void endOfStream() {}
+  }
+}
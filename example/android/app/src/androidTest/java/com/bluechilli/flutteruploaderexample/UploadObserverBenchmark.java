@@ -0,0 +1,158 @@
+package com.bluechilli.flutteruploaderexample;
+
+import androidx.annotation.Nullable;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
+import com.bluechilli.flutteruploader.TaskCodec;
+import com.bluechilli.flutteruploader.UploadMetrics;
+import com.bluechilli.flutteruploader.UploadStatus;
+import com.bluechilli.flutteruploader.UploadWorker;
+import com.bluechilli.flutteruploader.plugin.StatusListener;
+import com.bluechilli.flutteruploader.plugin.UploadObserver;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures {@link UploadObserver#onChanged(List)} with thousands of tasks, as delivered by the
+ * WorkManager {@code LiveData} on every state or progress change of any task.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UploadObserverBenchmark {
+  private static final int TASK_COUNT = 5000;
+
+  @Rule public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  // The observer only holds a weak reference.
+  private final CountingStatusListener listener = new CountingStatusListener();
+
+  private List<WorkInfo> running;
+  private List<WorkInfo> runningWithUpdate;
+  private List<WorkInfo> mixed;
+
+  @Before
+  public void setUp() {
+    running = new ArrayList<>();
+    mixed = new ArrayList<>();
+    for (int i = 0; i < TASK_COUNT; i++) {
+      UUID id = UUID.randomUUID();
+      running.add(runningInfo(id, i % 100));
+      mixed.add(i % 2 == 0 ? runningInfo(id, i % 100) : succeededInfo(id));
+    }
+
+    runningWithUpdate = new ArrayList<>(running);
+    WorkInfo last = running.get(TASK_COUNT - 1);
+    runningWithUpdate.set(TASK_COUNT - 1, runningInfo(last.getId(), 100));
+  }
+
+  /** A progress update of a single task, the common case while uploads are running. */
+  @Test
+  public void singleProgressUpdate() {
+    UploadObserver observer = new UploadObserver(listener);
+    observer.onChanged(running);
+
+    BenchmarkState state = benchmarkRule.getState();
+    boolean updated = false;
+    while (state.keepRunning()) {
+      updated = !updated;
+      observer.onChanged(updated ? runningWithUpdate : running);
+    }
+  }
+
+  /** Delivery of every task to a new observer, as when the plugin attaches to an engine. */
+  @Test
+  public void initialDelivery() {
+    BenchmarkState state = benchmarkRule.getState();
+    while (state.keepRunning()) {
+      state.pauseTiming();
+      UploadObserver observer = new UploadObserver(listener);
+      state.resumeTiming();
+
+      observer.onChanged(mixed);
+    }
+  }
+
+  private static WorkInfo runningInfo(UUID id, int progress) {
+    Data data =
+        new Data.Builder()
+            .putInt("status", UploadStatus.RUNNING)
+            .putInt("progress", progress)
+            .build();
+    return new WorkInfo(id, WorkInfo.State.RUNNING, Data.EMPTY, Collections.emptyList(), data, 0);
+  }
+
+  private static WorkInfo succeededInfo(UUID id) {
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("content-type", "application/json");
+    headers.put("date", "Fri, 16 Oct 2026 10:00:00 GMT");
+
+    Map<String, String> metrics = new LinkedHashMap<>();
+    metrics.put(UploadMetrics.CALLS, "1");
+    metrics.put(UploadMetrics.CONNECTIONS, "1");
+    metrics.put(UploadMetrics.REQUEST_BODY_MS, "850");
+    metrics.put(UploadMetrics.TIME_TO_FIRST_BYTE_MS, "120");
+    metrics.put(UploadMetrics.TOTAL_MS, "1010");
+
+    Data outputData =
+        new Data.Builder()
+            .putString(UploadWorker.EXTRA_ID, id.toString())
+            .putInt(UploadWorker.EXTRA_STATUS, UploadStatus.COMPLETE)
+            .putInt(UploadWorker.EXTRA_STATUS_CODE, 200)
+            .putString(UploadWorker.EXTRA_HEADERS, TaskCodec.encode(TaskCodec.STRING_MAP, headers))
+            .putString(UploadWorker.EXTRA_RESPONSE, "{\"id\":\"" + id + "\"}")
+            .putString(UploadWorker.EXTRA_METRICS, TaskCodec.encode(TaskCodec.STRING_MAP, metrics))
+            .build();
+    return new WorkInfo(
+        id, WorkInfo.State.SUCCEEDED, outputData, Collections.emptyList(), Data.EMPTY, 0);
+  }
+
+  private static class CountingStatusListener implements StatusListener {
+    int events;
+
+    @Override
+    public void onEnqueued(String id) {
+      events++;
+    }
+
+    @Override
+    public void onUpdateProgress(String id, int status, int progress) {
+      events++;
+    }
+
+    @Override
+    public void onFailed(
+        String id,
+        int status,
+        int statusCode,
+        String code,
+        String message,
+        @Nullable String[] details,
+        @Nullable Map<String, Object> metrics) {
+      events++;
+    }
+
+    @Override
+    public void onCompleted(
+        String id,
+        int status,
+        int statusCode,
+        String response,
+        @Nullable Map<String, String> headers,
+        @Nullable Map<String, Object> metrics) {
+      events++;
+    }
+
+    @Override
+    public void onWorkPruned() {}
+  }
+}
@@ -5,6 +5,7 @@ const functions = require("firebase-functions");
 const Busboy = require("busboy");
 const md5File = require('md5-file');
 const crypto = require("crypto");
+const zlib = require("zlib");
 
 exports.upload = functions.https.onRequest(async (req, res) => {
   const uploads = [];
@@ -122,6 +123,8 @@ exports.uploadBinary = functions.https.onRequest(async (req, res) => {
 
   return res.status(statusCode).json({
     message: "Successfully uploaded",
+    // Unique per request, so that clients can tell a replayed response from a new upload.
+    requestId: crypto.randomBytes(8).toString('hex'),
     length: fileSizeInBytes,
     md5: md5hash,
     headers: req.headers,
@@ -129,7 +132,143 @@ exports.uploadBinary = functions.https.onRequest(async (req, res) => {
   }).end();
 });
 
+// Resumable chunked uploads (RawUpload.chunkSize). Chunks are appended to a file named after the
+// `Upload-Id` request header. The first attempt of the chunk at the `dropAt` query offset is
+// aborted, so that the client has to retry and resume.
+exports.uploadChunked = functions.https.onRequest(async (req, res) => {
+  const uploadId = req.get('upload-id');
+  const offset = parseInt(req.get('upload-offset'), 10);
+  const range = /^bytes (\d+)-(\d+)\/(\d+)$/.exec(req.get('content-range') || '');
 
+  if (!uploadId || !/^[\w-]+$/.test(uploadId) || isNaN(offset) || !range) {
+    return res.status(400).json({
+      message: "Missing Upload-Id, Upload-Offset or Content-Range",
+    }).end();
+  }
+
+  const total = parseInt(range[3], 10);
+  const dataPath = path.join(os.tmpdir(), `chunked-${uploadId}`);
+  const statePath = `${dataPath}.json`;
+  const state = fs.existsSync(statePath)
+    ? JSON.parse(fs.readFileSync(statePath, 'utf8'))
+    : { offsets: [], dropped: [] };
+  const stored = fs.existsSync(dataPath) ? fs.statSync(dataPath).size : 0;
+
+  const dropAt = req.query.dropAt !== undefined ? parseInt(req.query.dropAt, 10) : -1;
+  if (offset === dropAt && !state.dropped.includes(offset)) {
+    console.log(`Chunked [${uploadId}]: dropping connection at ${offset}`);
+    state.dropped.push(offset);
+    fs.writeFileSync(statePath, JSON.stringify(state));
+    return req.socket.destroy();
+  }
+
+  if (offset !== stored) {
+    // Tell the client where to continue.
+    return res.status(308).set('Upload-Offset', String(stored)).end();
+  }
+
+  fs.appendFileSync(dataPath, req.rawBody);
+  state.offsets.push(offset);
+  const end = stored + req.rawBody.length;
+
+  if (end < total) {
+    fs.writeFileSync(statePath, JSON.stringify(state));
+    return res.status(308).set('Upload-Offset', String(end)).end();
+  }
+
+  const md5hash = md5File.sync(dataPath);
+  fs.unlinkSync(dataPath);
+  if (fs.existsSync(statePath)) {
+    fs.unlinkSync(statePath);
+  }
+
+  return res.status(200).json({
+    message: "Successfully uploaded",
+    length: end,
+    md5: md5hash,
+    offsets: state.offsets,
+    dropped: state.dropped,
+  }).end();
+});
+
+// Parallel multi-part uploads (RawUpload.parallelParts). Parts carry a `partNumber` query
+// parameter and are stored per `Upload-Id` header, each acknowledged with the MD5 of the part as
+// its ETag, except for the part given by the `noEtag` query parameter. Requests without a part
+// number complete the upload, their JSON body lists the ETags of all parts.
+exports.uploadParts = functions.https.onRequest(async (req, res) => {
+  const uploadId = req.get('upload-id');
+
+  if (!uploadId || !/^[\w-]+$/.test(uploadId)) {
+    return res.status(400).json({ message: "Missing Upload-Id" }).end();
+  }
+
+  const partPath = (partNumber) => path.join(os.tmpdir(), `parts-${uploadId}-${partNumber}`);
+
+  if (req.query.partNumber !== undefined) {
+    const partNumber = parseInt(req.query.partNumber, 10);
+    fs.writeFileSync(partPath(partNumber), req.rawBody);
+
+    if (req.query.noEtag !== undefined && parseInt(req.query.noEtag, 10) === partNumber) {
+      return res.status(200).end();
+    }
+
+    const etag = crypto.createHash('md5').update(req.rawBody).digest('hex');
+    return res.status(200).set('ETag', `"${etag}"`).end();
+  }
+
+  const completion = req.body && req.body.parts ? req.body : JSON.parse(req.rawBody.toString());
+  const parts = completion.parts.sort((a, b) => a.partNumber - b.partNumber);
+  const buffers = [];
+
+  for (const part of parts) {
+    const content = fs.readFileSync(partPath(part.partNumber));
+    fs.unlinkSync(partPath(part.partNumber));
+
+    const etag = crypto.createHash('md5').update(content).digest('hex');
+    if (part.etag !== `"${etag}"`) {
+      return res.status(400).json({
+        message: `ETag mismatch for part ${part.partNumber}`,
+      }).end();
+    }
+    buffers.push(content);
+  }
+
+  const content = Buffer.concat(buffers);
+  return res.status(200).json({
+    message: "Successfully uploaded",
+    parts: parts.length,
+    length: content.length,
+    md5: crypto.createHash('md5').update(content).digest('hex'),
+  }).end();
+});
+
+// Compressed binary uploads (Upload.compression). Echoes the decoded body, so the client can
+// verify the round trip. The body may have been inflated already, depending on the runtime.
+exports.uploadCompressed = functions.https.onRequest(async (req, res) => {
+  const encoding = req.get('content-encoding');
+  let body = req.rawBody;
+
+  try {
+    if (encoding === 'gzip' && body[0] === 0x1f && body[1] === 0x8b) {
+      body = zlib.gunzipSync(body);
+    } else if (encoding === 'deflate' && isZlibHeader(body)) {
+      body = zlib.inflateSync(body);
+    }
+  } catch (e) {
+    console.error(e);
+    return res.status(400).json({
+      message: `Invalid ${encoding} body`,
+    }).end();
+  }
+
+  return res.status(200).json({
+    message: "Successfully uploaded",
+    encoding: encoding || null,
+    length: body.length,
+    md5: crypto.createHash('md5').update(body).digest('hex'),
+    body: body.toString('utf8'),
+  }).end();
+});
 
 function statusCodeForSimulation(simulation) {
   switch (simulation) {
@@ -163,6 +302,11 @@ function jsonMessageForSimulation(simulation) {
   }
 }
 
+// RFC 1950: deflate compression method and a header checksum.
+function isZlibHeader(buffer) {
+  return buffer.length >= 2 && (buffer[0] & 0x0f) === 0x08 && buffer.readUInt16BE(0) % 31 === 0;
+}
+
 function writeToFile(filePath, rawBody) {
   return new Promise((resolve, reject) => {
     const file = fs.createWriteStream(filePath);
@@ -2,6 +2,7 @@ import 'dart:convert';
 import 'dart:math';
 import 'dart:io';
 
+import 'package:crypto/crypto.dart';
 import 'package:integration_test/integration_test.dart';
 import 'package:flutter_test/flutter_test.dart';
 import 'package:path_provider/path_provider.dart';
@@ -257,6 +258,172 @@ void main() {
       expect(res.statusCode, 500);
       expect(res.status, UploadTaskStatus.failed);
     });
+
+    Future<Map<String, dynamic>> upload(RawUpload upload) async {
+      final taskId = await uploader.enqueue(upload);
+      final res = await uploader.result.firstWhere(isCompleted(taskId));
+      return jsonDecode(res.response!);
+    }
+
+    testWidgets('skips a duplicate upload', (WidgetTester tester) async {
+      final path = await _tmpFile();
+      final first = await upload(
+        RawUpload(url: url.toString(), path: path, deduplicate: true),
+      );
+      final second = await upload(
+        RawUpload(url: url.toString(), path: path, deduplicate: true),
+      );
+
+      expect(second['requestId'], first['requestId']);
+      expect(second['md5'], first['md5']);
+    }, skip: !Platform.isAndroid);
+
+    testWidgets('uploads the same content with another method',
+        (WidgetTester tester) async {
+      final path = await _tmpFile();
+      final post = await upload(
+        RawUpload(url: url.toString(), path: path, deduplicate: true),
+      );
+      final put = await upload(
+        RawUpload(
+          url: url.toString(),
+          path: path,
+          method: UploadMethod.PUT,
+          deduplicate: true,
+        ),
+      );
+
+      expect(put['method'], 'PUT');
+      expect(put['requestId'], isNot(post['requestId']));
+      expect(put['md5'], post['md5']);
+    }, skip: !Platform.isAndroid);
+
+    testWidgets('uploads the same content with another query',
+        (WidgetTester tester) async {
+      final path = await _tmpFile();
+      final first = await upload(RawUpload(
+        url: url.replace(queryParameters: {'albumId': '1'}).toString(),
+        path: path,
+        deduplicate: true,
+      ));
+      final second = await upload(RawUpload(
+        url: url.replace(queryParameters: {'albumId': '2'}).toString(),
+        path: path,
+        deduplicate: true,
+      ));
+
+      expect(second['requestId'], isNot(first['requestId']));
+      expect(second['md5'], first['md5']);
+    }, skip: !Platform.isAndroid);
+  });
+
+  group('chunked binary uploads', () {
+    final url = baseUrl.replace(path: baseUrl.path + 'Chunked');
+    const chunkSize = 1024;
+
+    testWidgets('single file', (WidgetTester tester) async {
+      final taskId = await uploader.enqueue(
+        RawUpload(
+          url: url.toString(),
+          path: await _tmpFile(chunkSize * 3 - 100),
+          chunkSize: chunkSize,
+          headers: {'Upload-Id': _randomId()},
+        ),
+      );
+
+      final res = await uploader.result.firstWhere(isCompleted(taskId));
+      final json = jsonDecode(res.response!);
+
+      expect(json['length'], chunkSize * 3 - 100);
+      expect(json['offsets'], [0, chunkSize, chunkSize * 2]);
+    }, skip: !Platform.isAndroid);
+
+    testWidgets('resumes from the acknowledged offset after a retry',
+        (WidgetTester tester) async {
+      final taskId = await uploader.enqueue(
+        RawUpload(
+          url: url.replace(queryParameters: {
+            'dropAt': '$chunkSize',
+          }).toString(),
+          path: await _tmpFile(chunkSize * 3),
+          chunkSize: chunkSize,
+          headers: {'Upload-Id': _randomId()},
+        ),
+      );
+
+      final res = await uploader.result.firstWhere(isCompleted(taskId));
+      final json = jsonDecode(res.response!);
+
+      expect(json['length'], chunkSize * 3);
+      expect(json['dropped'], [chunkSize]);
+      // The first chunk is not sent again.
+      expect(json['offsets'], [0, chunkSize, chunkSize * 2]);
+    }, skip: !Platform.isAndroid);
+  });
+
+  group('parallel binary uploads', () {
+    final url = baseUrl.replace(path: baseUrl.path + 'Parts');
+
+    testWidgets('splits and reassembles the file', (WidgetTester tester) async {
+      final path = await _tmpFile(3000);
+      final taskId = await uploader.enqueue(
+        RawUpload(
+          url: url.toString(),
+          path: path,
+          parallelParts: 3,
+          chunkSize: 1024,
+          headers: {'Upload-Id': _randomId()},
+        ),
+      );
+
+      final res = await uploader.result.firstWhere(isCompleted(taskId));
+      final json = jsonDecode(res.response!);
+
+      expect(json['parts'], 3);
+      expect(json['length'], 3000);
+      expect(json['md5'], md5.convert(File(path).readAsBytesSync()).toString());
+    }, skip: !Platform.isAndroid);
+
+    testWidgets('fails when a part has no ETag', (WidgetTester tester) async {
+      final taskId = await uploader.enqueue(
+        RawUpload(
+          url: url.replace(queryParameters: {'noEtag': '2'}).toString(),
+          path: await _tmpFile(3000),
+          parallelParts: 3,
+          chunkSize: 1024,
+          headers: {'Upload-Id': _randomId()},
+        ),
+      );
+
+      final res = await uploader.result.firstWhere(isFailed(taskId));
+      expect(res.response, 'Part 2 was stored without an ETag');
+    }, skip: !Platform.isAndroid);
+  });
+
+  group('compressed binary uploads', () {
+    final url = baseUrl.replace(path: baseUrl.path + 'Compressed');
+    final text = List.filled(64, 'flutter_uploader compression, ').join();
+
+    for (final compression in UploadCompression.values) {
+      final encoding = compression.toString().split('.').last;
+
+      testWidgets('round-trips $encoding', (WidgetTester tester) async {
+        final taskId = await uploader.enqueue(
+          RawUpload(
+            url: url.toString(),
+            path: await _tmpTextFile(text),
+            compression: compression,
+          ),
+        );
+
+        final res = await uploader.result.firstWhere(isCompleted(taskId));
+        final json = jsonDecode(res.response!);
+
+        expect(json['encoding'], encoding);
+        expect(json['length'], text.length);
+        expect(json['body'], text);
+      }, skip: !Platform.isAndroid);
+    }
   });
 }
 
@@ -276,3 +443,18 @@ Future<String> _tmpFile([int length = 128]) async {
 
   return file.path;
 }
+
+/// Create a temporary text file, which is compressible.
+Future<String> _tmpTextFile(String text) async {
+  final tempDir = await getTemporaryDirectory();
+  final file = File('${tempDir.path}/${_randomId()}.txt')
+    ..writeAsStringSync(text);
+
+  return file.path;
+}
+
+/// A random identifier, e.g. to tell uploads apart on the server.
+String _randomId() {
+  final random = Random.secure();
+  return List.generate(16, (_) => random.nextInt(16).toRadixString(16)).join();
+}
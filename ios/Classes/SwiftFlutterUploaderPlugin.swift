@@ -75,10 +75,15 @@ public class SwiftFlutterUploaderPlugin: NSObject, FlutterPlugin {
             enqueueMethodCall(call, result)
         case "enqueueBinary":
             enqueueBinaryMethodCall(call, result)
+        case "enqueueAll", "enqueueBinaryAll":
+            enqueueAllMethodCall(call, result)
         case "cancel":
             cancelMethodCall(call, result)
         case "cancelAll":
             cancelAllMethodCall(call, result)
+        case "setProgressBatching", "setBandwidthLimit", "setAdaptiveConcurrency":
+            // Progress batching, bandwidth limits and adaptive concurrency are only supported on Android.
+            result(nil)
         default:
             result(FlutterMethodNotImplemented)
         }
@@ -183,6 +188,52 @@ public class SwiftFlutterUploaderPlugin: NSObject, FlutterPlugin {
         })
     }
 
+    /// Enqueues the uploads one after another. At the first invalid one, the uploads which were
+    /// already started are cancelled again.
+    private func enqueueAllMethodCall(_ call: FlutterMethodCall, _ result: @escaping FlutterResult) {
+        guard let args = call.arguments as? [String: Any?],
+              let uploads = args["uploads"] as? [Any] else {
+            result(FlutterError(code: "invalid_parameters", message: "Invalid parameters passed", details: nil))
+            return
+        }
+
+        let binaryByDefault = call.method == "enqueueBinaryAll"
+        var taskIds = [String]()
+
+        // Either all uploads are enqueued or none is, the ids of started tasks would be lost.
+        func fail(_ code: String, _ message: String, _ index: Int) {
+            for taskId in taskIds {
+                urlSessionUploader.cancelWithTaskId(taskId)
+            }
+            result(FlutterError(code: code, message: message, details: index))
+        }
+
+        func enqueueNext() {
+            let index = taskIds.count
+            guard index < uploads.count else {
+                result(taskIds)
+                return
+            }
+
+            let upload = uploads[index]
+            let binary = (upload as? [String: Any?])?["binary"] as? Bool ?? binaryByDefault
+            let method = binary ? "enqueueBinary" : "enqueue"
+
+            handle(FlutterMethodCall(methodName: method, arguments: upload)) { value in
+                if let taskId = value as? String {
+                    taskIds.append(taskId)
+                    enqueueNext()
+                } else if let error = value as? FlutterError {
+                    fail(error.code, "Upload \(index): \(error.message ?? "")", index)
+                } else {
+                    fail("enqueue_error", "Upload \(index) could not be enqueued", index)
+                }
+            }
+        }
+
+        enqueueNext()
+    }
+
     private func cancelMethodCall(_ call: FlutterMethodCall, _ result: @escaping FlutterResult) {
         if let args = call.arguments as? [String: Any?],
            let taskId = args[Key.taskId] as? String {
@@ -13,8 +13,16 @@ part 'src/flutter_uploader.dart';
 
 part 'src/upload.dart';
 
+part 'src/upload_compression.dart';
+
 part 'src/upload_method.dart';
 
+part 'src/upload_priority.dart';
+
+part 'src/upload_scheduler_stats.dart';
+
+part 'src/upload_task_metrics.dart';
+
 part 'src/upload_task_progress.dart';
 
 part 'src/upload_task_response.dart';
@@ -4,6 +4,9 @@ part of flutter_uploader;
 class FileItem {
   /// Path to the local file. It is the developers reponsibility to ensure
   /// the path can be accessed.
+  ///
+  /// On Android, this may also be a `content://` URI, e.g. of gallery media,
+  /// which is streamed from its content provider without a temporary copy.
   final String path;
 
   /// The field name will be used during HTTP multipart/form-data uploads.
@@ -7,9 +7,11 @@ class FlutterUploader {
   final MethodChannel _platform;
   final EventChannel _progressChannel;
   final EventChannel _resultChannel;
+  final EventChannel _metricsChannel;
 
   Stream<UploadTaskProgress>? _progressStream;
   Stream<UploadTaskResponse>? _resultStream;
+  Stream<UploadTaskMetrics>? _metricsStream;
 
   static FlutterUploader? _instance;
 
@@ -27,10 +29,13 @@ class FlutterUploader {
   FlutterUploader.private(
     MethodChannel channel,
     EventChannel progressChannel,
-    EventChannel resultChannel,
-  )   : _platform = channel,
+    EventChannel resultChannel, [
+    EventChannel metricsChannel =
+        const EventChannel('flutter_uploader/events/metrics'),
+  ])  : _platform = channel,
         _progressChannel = progressChannel,
-        _resultChannel = resultChannel;
+        _resultChannel = resultChannel,
+        _metricsChannel = metricsChannel;
 
   /// This call is required to receive background notifications.
   /// [backgroundHandler] is a top level function which will be invoked by Android
@@ -46,10 +51,107 @@ class FlutterUploader {
   Stream<UploadTaskProgress> get progress {
     return _progressStream ??= _progressChannel
         .receiveBroadcastStream()
+        .expand<dynamic>((event) => event is List ? event : [event])
         .map<Map<String, dynamic>>((event) => Map<String, dynamic>.from(event))
         .map(_parseProgress);
   }
 
+  /// Batches progress events on the platform side.
+  ///
+  /// When enabled, the latest progress of every active task is collected over
+  /// [window] (e.g. 16 or 100 milliseconds) and delivered in a single platform
+  /// channel message. This greatly reduces the number of channel messages
+  /// during heavy upload bursts. Passing `null` or [Duration.zero] disables
+  /// batching again. The [progress] stream is unaffected by this setting.
+  ///
+  /// (only used on Android)
+  Future<void> setProgressBatching(Duration? window) async {
+    await _platform.invokeMethod<void>('setProgressBatching', {
+      'windowMillis': window?.inMilliseconds ?? 0,
+    });
+  }
+
+  /// Changes the maximum number of uploads running at the same time.
+  ///
+  /// Additional uploads are queued and started as soon as a running upload
+  /// finishes. Raising the limit starts queued uploads immediately. The
+  /// initial value is configured through the `MAX_CONCURRENT_TASKS` meta-data.
+  ///
+  /// [perHost] additionally limits the uploads running against the same host,
+  /// `0` removes that limit. Free slots are shared round-robin between hosts.
+  /// The initial value is configured through the
+  /// `MAX_CONCURRENT_TASKS_PER_HOST` meta-data.
+  ///
+  /// While [setAdaptiveConcurrency] is enabled, [maxConcurrentTasks] is the
+  /// upper bound of the adaptive limit, and the limit once it is disabled.
+  ///
+  /// (only supported on Android)
+  Future<void> setMaxConcurrentTasks(
+    int maxConcurrentTasks, {
+    int? perHost,
+  }) async {
+    await _platform.invokeMethod<void>('setMaxConcurrentTasks', {
+      'maxConcurrentTasks': maxConcurrentTasks,
+      'maxConcurrentTasksPerHost': perHost,
+    });
+  }
+
+  /// Enables or disables the adaptive concurrency limit.
+  ///
+  /// When enabled, the number of concurrent uploads is adjusted to the
+  /// measured throughput while uploads are queued: it grows by one while the
+  /// throughput keeps up with its recent average and is halved when it stays
+  /// below for several samples. The limit stays between 1 and the
+  /// `ADAPTIVE_MAX_CONCURRENT_TASKS` meta-data, or the last value passed to
+  /// [setMaxConcurrentTasks]. Disabling restores the configured limit.
+  /// See [getSchedulerStats] for the current limit and throughput samples.
+  ///
+  /// (only used on Android)
+  Future<void> setAdaptiveConcurrency(bool enabled) async {
+    await _platform.invokeMethod<void>('setAdaptiveConcurrency', {
+      'enabled': enabled,
+    });
+  }
+
+  /// Limits the upload bandwidth shared by all running uploads to
+  /// [bytesPerSecond]. Passing `null` or `0` removes the limit.
+  ///
+  /// The budget is split between uploads by their [Upload.priority]: a high
+  /// priority upload receives four times, a normal priority upload twice the
+  /// bandwidth of a low priority upload. The initial value is configured
+  /// through the `BANDWIDTH_LIMIT_BYTES_PER_SECOND` meta-data.
+  ///
+  /// (only used on Android)
+  Future<void> setBandwidthLimit(int? bytesPerSecond) async {
+    await _platform.invokeMethod<void>('setBandwidthLimit', {
+      'bytesPerSecond': bytesPerSecond ?? 0,
+    });
+  }
+
+  /// Returns the current queue depth and active count of the upload
+  /// scheduler, as well as the state of the background handler's engine.
+  ///
+  /// (only supported on Android)
+  Future<UploadSchedulerStats> getSchedulerStats() async {
+    final map = (await _platform
+        .invokeMapMethod<String, dynamic>('getSchedulerStats'))!;
+
+    return UploadSchedulerStats(
+      queued: map['queued'],
+      running: map['running'],
+      completed: map['completed'],
+      maxConcurrentTasks: map['maxConcurrentTasks'],
+      maxConcurrentTasksPerHost: map['maxConcurrentTasksPerHost'] ?? 0,
+      adaptiveConcurrency: map['adaptiveConcurrency'] ?? false,
+      throughputSamples: List<int>.from(map['throughputSamples'] ?? const []),
+      backgroundEngineRunning: map['backgroundEngineRunning'] ?? false,
+      backgroundEngineStarts: map['backgroundEngineStarts'] ?? 0,
+      backgroundEngineStartupMillis: map['backgroundEngineStartupMillis'] ?? -1,
+      backgroundEngineNativeHeapBytes:
+          map['backgroundEngineNativeHeapBytes'] ?? -1,
+    );
+  }
+
   UploadTaskProgress _parseProgress(Map<String, dynamic> map) {
     String id = map['taskId'];
     int status = map['status'];
@@ -73,6 +175,7 @@ class FlutterUploader {
   Stream<UploadTaskResponse> get result {
     return _resultStream ??= _resultChannel
         .receiveBroadcastStream()
+        .expand<dynamic>((event) => event is List ? event : [event])
         .map<Map<String, dynamic>>((event) => Map<String, dynamic>.from(event))
         .map(_parseResult);
   }
@@ -92,6 +195,41 @@ class FlutterUploader {
       statusCode: statusCode,
       headers: headers,
       response: message,
+      metrics: map['metrics'] != null
+          ? _parseMetrics(id, Map<String, dynamic>.from(map['metrics']))
+          : null,
+    );
+  }
+
+  /// Stream to listen on the network timings of finished uploads, see
+  /// [UploadTaskMetrics]. The same metrics are attached to the [result].
+  ///
+  /// (only supported on Android)
+  Stream<UploadTaskMetrics> get metrics {
+    return _metricsStream ??= _metricsChannel
+        .receiveBroadcastStream()
+        .expand<dynamic>((event) => event is List ? event : [event])
+        .map<Map<String, dynamic>>((event) => Map<String, dynamic>.from(event))
+        .map((map) => _parseMetrics(map['taskId'], map));
+  }
+
+  UploadTaskMetrics _parseMetrics(String taskId, Map<String, dynamic> map) {
+    Duration duration(String key) => Duration(milliseconds: map[key] ?? 0);
+
+    return UploadTaskMetrics(
+      taskId: taskId,
+      calls: map['calls'] ?? 0,
+      connections: map['connections'] ?? 0,
+      dns: duration('dnsMs'),
+      connect: duration('connectMs'),
+      tls: duration('tlsMs'),
+      requestHeaders: duration('requestHeadersMs'),
+      requestBody: duration('requestBodyMs'),
+      timeToFirstByte: duration('timeToFirstByteMs'),
+      responseBody: duration('responseBodyMs'),
+      total: duration('totalMs'),
+      requestBodyBytes: map['requestBodyBytes'] ?? 0,
+      responseBodyBytes: map['responseBodyBytes'] ?? 0,
     );
   }
 
@@ -100,28 +238,85 @@ class FlutterUploader {
   /// See [MultipartFormDataUpload], [RawUpload] for available configuration.
   Future<String> enqueue(Upload upload) async {
     if (upload is MultipartFormDataUpload) {
-      return (await _platform.invokeMethod<String>('enqueue', {
-        'url': upload.url,
-        'method': describeEnum(upload.method),
-        'files': (upload.files ?? []).map((e) => e.toJson()).toList(),
-        'headers': upload.headers,
-        'data': upload.data,
-        'tag': upload.tag,
-      }))!;
+      return (await _platform.invokeMethod<String>(
+          'enqueue', _multipartArguments(upload)))!;
     }
     if (upload is RawUpload) {
-      return (await _platform.invokeMethod<String>('enqueueBinary', {
-        'url': upload.url,
-        'method': describeEnum(upload.method),
-        'path': upload.path,
-        'headers': upload.headers,
-        'tag': upload.tag
-      }))!;
+      return (await _platform.invokeMethod<String>(
+          'enqueueBinary', _rawArguments(upload)))!;
     }
 
     throw 'Invalid upload type';
   }
 
+  /// Enqueues all [uploads] at once and returns their task ids in the same
+  /// order.
+  ///
+  /// This is considerably faster than calling [enqueue] for every upload, as
+  /// the platform validates and persists all tasks in a single transaction.
+  /// Multipart and raw uploads can be mixed in a single call.
+  /// If any upload is invalid, the returned future completes with a
+  /// [PlatformException] whose `details` contain the index of that upload, and
+  /// no upload is enqueued. On Android, the uploads are validated before any of
+  /// them is enqueued. On iOS, the uploads before the invalid one are started
+  /// and cancelled again, so they may report a cancelled result.
+  Future<List<String>> enqueueAll(List<Upload> uploads) async {
+    if (uploads.any((u) => u is! MultipartFormDataUpload && u is! RawUpload)) {
+      throw 'Invalid upload type';
+    }
+
+    if (uploads.isEmpty) {
+      return <String>[];
+    }
+
+    return (await _platform.invokeListMethod<String>('enqueueAll', {
+      'uploads': uploads.map((upload) {
+        return upload is RawUpload
+            ? {..._rawArguments(upload), 'binary': true}
+            : {
+                ..._multipartArguments(upload as MultipartFormDataUpload),
+                'binary': false,
+              };
+      }).toList(),
+    }))!;
+  }
+
+  Map<String, dynamic> _multipartArguments(MultipartFormDataUpload upload) {
+    return {
+      'url': upload.url,
+      'method': describeEnum(upload.method),
+      'files': (upload.files ?? []).map((e) => e.toJson()).toList(),
+      'headers': upload.headers,
+      'data': upload.data,
+      'tag': upload.tag,
+      'priority': describeEnum(upload.priority),
+      'compression': _describeCompression(upload.compression),
+      'deduplicate': upload.deduplicate,
+      'dedupCheckUrl': upload.dedupCheckUrl,
+    };
+  }
+
+  String? _describeCompression(UploadCompression? compression) {
+    return compression != null ? describeEnum(compression) : null;
+  }
+
+  Map<String, dynamic> _rawArguments(RawUpload upload) {
+    return {
+      'url': upload.url,
+      'method': describeEnum(upload.method),
+      'path': upload.path,
+      'headers': upload.headers,
+      'tag': upload.tag,
+      'chunkSize': upload.chunkSize,
+      'parallelParts': upload.parallelParts,
+      'completeUrl': upload.completeUrl,
+      'priority': describeEnum(upload.priority),
+      'compression': _describeCompression(upload.compression),
+      'deduplicate': upload.deduplicate,
+      'dedupCheckUrl': upload.dedupCheckUrl,
+    };
+  }
+
   /// Cancel a given upload task
   ///
   /// **parameters:**
@@ -9,6 +9,10 @@ abstract class Upload {
     required this.method,
     this.headers = const <String, String>{},
     this.tag,
+    this.priority = UploadPriority.normal,
+    this.compression,
+    this.deduplicate = false,
+    this.dedupCheckUrl,
   });
 
   /// Upload link
@@ -22,6 +26,31 @@ abstract class Upload {
 
   /// Name of the upload request (only used on Android)
   final String? tag;
+
+  /// Scheduling priority relative to other queued uploads (only used on
+  /// Android)
+  final UploadPriority priority;
+
+  /// Compresses the request body while it is sent, e.g. for form fields or
+  /// text and log files. Files which are compressed already, such as JPEG or
+  /// MP4, are sent as is. Chunked and parallel uploads are never compressed.
+  /// Progress refers to the uncompressed size. (only used on Android)
+  final UploadCompression? compression;
+
+  /// Skips uploading content which was uploaded to the same endpoint before.
+  ///
+  /// The plugin keeps a persistent index of content hashes (SHA-256) and the
+  /// results of previous uploads, per method and [url], including its query.
+  /// If the content was uploaded there before, the upload completes
+  /// immediately with the stored result. (only used on Android)
+  final bool deduplicate;
+
+  /// When [deduplicate] is set and the content is not in the local index,
+  /// the plugin sends a `HEAD` request to this URL with the SHA-256 of the
+  /// content in the `Upload-Content-Hash` header. A `2xx` response means the
+  /// server stores the content already and the upload is skipped.
+  /// (only used on Android)
+  final String? dedupCheckUrl;
 }
 
 /// Standard RFC 2388 multipart/form-data upload.
@@ -34,6 +63,10 @@ class MultipartFormDataUpload extends Upload {
     UploadMethod method = UploadMethod.POST,
     Map<String, String>? headers,
     String? tag,
+    UploadPriority priority = UploadPriority.normal,
+    UploadCompression? compression,
+    bool deduplicate = false,
+    String? dedupCheckUrl,
     this.files,
     this.data,
   })  : assert(files != null || data != null),
@@ -42,6 +75,10 @@ class MultipartFormDataUpload extends Upload {
           method: method,
           headers: headers,
           tag: tag,
+          priority: priority,
+          compression: compression,
+          deduplicate: deduplicate,
+          dedupCheckUrl: dedupCheckUrl,
         ) {
     // Need to specify either files or data.
     assert(files!.isNotEmpty || data!.isNotEmpty);
@@ -62,14 +99,52 @@ class RawUpload extends Upload {
     UploadMethod method = UploadMethod.POST,
     Map<String, String>? headers,
     String? tag,
+    UploadPriority priority = UploadPriority.normal,
+    UploadCompression? compression,
+    bool deduplicate = false,
+    String? dedupCheckUrl,
     this.path,
+    this.chunkSize,
+    this.parallelParts,
+    this.completeUrl,
   }) : super(
           url: url,
           method: method,
           headers: headers,
           tag: tag,
+          priority: priority,
+          compression: compression,
+          deduplicate: deduplicate,
+          dedupCheckUrl: dedupCheckUrl,
         );
 
-  /// single file to upload
+  /// single file to upload, may be a `content://` URI on Android
   final String? path;
+
+  /// When set, the file is sent as a series of requests carrying at most
+  /// [chunkSize] bytes each. Every chunk includes a `Content-Range` and an
+  /// `Upload-Offset` header. The server acknowledges a chunk with a `2xx` or
+  /// `308` response and may confirm the stored offset through a `Range` or
+  /// `Upload-Offset` response header.
+  ///
+  /// Interrupted uploads resume from the last acknowledged chunk.
+  /// (only used on Android)
+  final int? chunkSize;
+
+  /// When larger than one, the file is split into byte ranges which are
+  /// uploaded over up to [parallelParts] concurrent connections, in the style
+  /// of S3 multipart uploads. [chunkSize] then sets the size of each part,
+  /// otherwise the file is split evenly.
+  ///
+  /// Each part is sent to [url] with a `partNumber` query parameter and a
+  /// `Content-Range` header. Once all parts are stored, their `ETag`s are
+  /// posted as JSON (`{"parts": [{"partNumber": 1, "etag": "..."}]}`) to
+  /// [completeUrl], whose response becomes the upload result. The upload
+  /// fails if a part is acknowledged without an `ETag`.
+  /// (only used on Android)
+  final int? parallelParts;
+
+  /// Receives the completion request of a parallel upload, defaults to [url].
+  /// (only used on Android)
+  final String? completeUrl;
 }
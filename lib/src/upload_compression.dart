@@ -0,0 +1,12 @@
+part of flutter_uploader;
+
+/// Content encoding used to compress the request body (only used on Android).
+///
+/// The server must accept the request with the matching `Content-Encoding`.
+enum UploadCompression {
+  /// gzip, RFC 1952
+  gzip,
+
+  /// zlib-wrapped deflate, RFC 1950
+  deflate,
+}
@@ -0,0 +1,21 @@
+part of flutter_uploader;
+
+/// Scheduling priority of an upload (only used on Android).
+///
+/// Queued uploads of a higher priority are started before queued uploads of a
+/// lower priority. Uploads which are already running are not interrupted.
+///
+/// Priorities only apply to uploads which WorkManager has started, usually up
+/// to 20 at a time. Uploads still waiting in WorkManager's own queue are
+/// started in the order they were enqueued; [FlutterUploader.enqueueAll]
+/// enqueues the uploads of a higher priority first.
+enum UploadPriority {
+  /// Background work, e.g. backups.
+  low,
+
+  /// The default priority.
+  normal,
+
+  /// User initiated uploads which should start as soon as possible.
+  high,
+}
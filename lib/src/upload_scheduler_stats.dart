@@ -0,0 +1,74 @@
+part of flutter_uploader;
+
+/// Snapshot of the platform upload scheduler, see
+/// [FlutterUploader.getSchedulerStats].
+class UploadSchedulerStats extends Equatable {
+  /// Number of uploads waiting for a free slot.
+  final int queued;
+
+  /// Number of uploads currently running.
+  final int running;
+
+  /// Number of uploads which finished since the app was started.
+  final int completed;
+
+  /// The current concurrency limit.
+  final int maxConcurrentTasks;
+
+  /// The current concurrency limit per host, `0` if unlimited.
+  final int maxConcurrentTasksPerHost;
+
+  /// Whether [maxConcurrentTasks] is adjusted to the measured throughput.
+  final bool adaptiveConcurrency;
+
+  /// Recent samples of the aggregate upload throughput in bytes per second,
+  /// the newest last. Only sampled while [adaptiveConcurrency] is enabled.
+  final List<int> throughputSamples;
+
+  /// Whether the engine running the background handler is alive.
+  final bool backgroundEngineRunning;
+
+  /// Number of times the background engine was started.
+  final int backgroundEngineStarts;
+
+  /// Duration of the last background engine start in milliseconds, `-1` if
+  /// it was never started.
+  final int backgroundEngineStartupMillis;
+
+  /// Growth of the native heap during the last background engine start,
+  /// approximating its memory footprint. `-1` if it was never started.
+  final int backgroundEngineNativeHeapBytes;
+
+  /// Default constructor.
+  UploadSchedulerStats({
+    required this.queued,
+    required this.running,
+    required this.completed,
+    required this.maxConcurrentTasks,
+    this.maxConcurrentTasksPerHost = 0,
+    this.adaptiveConcurrency = false,
+    this.throughputSamples = const [],
+    this.backgroundEngineRunning = false,
+    this.backgroundEngineStarts = 0,
+    this.backgroundEngineStartupMillis = -1,
+    this.backgroundEngineNativeHeapBytes = -1,
+  });
+
+  @override
+  bool get stringify => true;
+
+  @override
+  List<Object?> get props => [
+        queued,
+        running,
+        completed,
+        maxConcurrentTasks,
+        maxConcurrentTasksPerHost,
+        adaptiveConcurrency,
+        throughputSamples,
+        backgroundEngineRunning,
+        backgroundEngineStarts,
+        backgroundEngineStartupMillis,
+        backgroundEngineNativeHeapBytes,
+      ];
+}
@@ -0,0 +1,85 @@
+part of flutter_uploader;
+
+/// Network timings of a finished upload, summed over all of its requests,
+/// e.g. the chunks of a chunked upload.
+///
+/// [timeToFirstByte] is measured from the end of the request to the start of
+/// the response and therefore reflects the server, while [dns], [connect] and
+/// [requestBody] reflect the network.
+class UploadTaskMetrics extends Equatable {
+  /// Upload Task ID.
+  final String taskId;
+
+  /// Number of HTTP requests made for the upload.
+  final int calls;
+
+  /// Number of new connections, requests on pooled connections need none.
+  final int connections;
+
+  /// Time spent resolving host names.
+  final Duration dns;
+
+  /// Time spent establishing connections, including [tls].
+  final Duration connect;
+
+  /// Time spent in TLS handshakes.
+  final Duration tls;
+
+  /// Time spent sending request headers.
+  final Duration requestHeaders;
+
+  /// Time spent sending request bodies.
+  final Duration requestBody;
+
+  /// Time between the end of a request and the start of its response.
+  final Duration timeToFirstByte;
+
+  /// Time spent receiving response bodies.
+  final Duration responseBody;
+
+  /// Total duration of all requests.
+  final Duration total;
+
+  /// Number of request body bytes sent.
+  final int requestBodyBytes;
+
+  /// Number of response body bytes received.
+  final int responseBodyBytes;
+
+  /// Default constructor.
+  UploadTaskMetrics({
+    required this.taskId,
+    this.calls = 0,
+    this.connections = 0,
+    this.dns = Duration.zero,
+    this.connect = Duration.zero,
+    this.tls = Duration.zero,
+    this.requestHeaders = Duration.zero,
+    this.requestBody = Duration.zero,
+    this.timeToFirstByte = Duration.zero,
+    this.responseBody = Duration.zero,
+    this.total = Duration.zero,
+    this.requestBodyBytes = 0,
+    this.responseBodyBytes = 0,
+  });
+
+  @override
+  bool get stringify => true;
+
+  @override
+  List<Object?> get props => [
+        taskId,
+        calls,
+        connections,
+        dns,
+        connect,
+        tls,
+        requestHeaders,
+        requestBody,
+        timeToFirstByte,
+        responseBody,
+        total,
+        requestBodyBytes,
+        responseBodyBytes,
+      ];
+}
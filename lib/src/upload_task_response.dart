@@ -19,6 +19,10 @@ class UploadTaskResponse extends Equatable {
   /// Response headers.
   final Map<String, dynamic>? headers;
 
+  /// Network timings of the upload, if it made any requests (only reported on
+  /// Android).
+  final UploadTaskMetrics? metrics;
+
   /// Default constructor.
   UploadTaskResponse({
     required this.taskId,
@@ -26,6 +30,7 @@ class UploadTaskResponse extends Equatable {
     this.statusCode,
     this.status,
     this.headers,
+    this.metrics,
   });
 
   @override
@@ -39,6 +44,7 @@ class UploadTaskResponse extends Equatable {
       statusCode,
       status,
       headers,
+      metrics,
     ];
   }
 }
@@ -23,9 +23,11 @@ void main() {
 
   EventChannel progressChannel;
   EventChannel resultChannel;
+  EventChannel metricsChannel;
 
   late StreamController<dynamic> progressController;
   late StreamController<dynamic> resultController;
+  late StreamController<dynamic> metricsController;
 
   final log = <MethodCall>[];
 
@@ -44,17 +46,21 @@ void main() {
 
     progressChannel = MockEventChannel();
     resultChannel = MockEventChannel();
+    metricsChannel = MockEventChannel();
 
     progressController = StreamController();
     resultController = StreamController();
+    metricsController = StreamController();
 
     when(progressChannel.receiveBroadcastStream())
         .thenAnswer((_) => progressController.stream.asBroadcastStream());
     when(resultChannel.receiveBroadcastStream())
         .thenAnswer((_) => resultController.stream.asBroadcastStream());
+    when(metricsChannel.receiveBroadcastStream())
+        .thenAnswer((_) => metricsController.stream.asBroadcastStream());
 
-    uploader =
-        FlutterUploader.private(methodChannel, progressChannel, resultChannel);
+    uploader = FlutterUploader.private(
+        methodChannel, progressChannel, resultChannel, metricsChannel);
 
     log.clear();
   });
@@ -62,6 +68,7 @@ void main() {
   tearDown(() {
     progressController.close();
     resultController.close();
+    metricsController.close();
   });
 
   group('FlutterUploader', () {
@@ -123,6 +130,10 @@ void main() {
               'data1': 'value1',
             },
             'tag': 'tag1',
+            'priority': 'normal',
+            'compression': null,
+            'deduplicate': false,
+            'dedupCheckUrl': null,
           }),
         ]);
       });
@@ -157,10 +168,144 @@ void main() {
               'header1': 'value1',
             },
             'tag': 'tag1',
+            'chunkSize': null,
+            'parallelParts': null,
+            'completeUrl': null,
+            'priority': 'normal',
+            'compression': null,
+            'deduplicate': false,
+            'dedupCheckUrl': null,
           }),
         ]);
       });
+
+      test('passes the priority', () async {
+        mockResponse = 'TASK123';
+
+        await uploader.enqueue(RawUpload(
+          url: 'http://www.somewhere.com',
+          path: '/path/to/file1',
+          priority: UploadPriority.high,
+        ));
+
+        expect(log.single.arguments, containsPair('priority', 'high'));
+      });
+
+      test('passes the compression', () async {
+        mockResponse = 'TASK123';
+
+        await uploader.enqueue(RawUpload(
+          url: 'http://www.somewhere.com',
+          path: '/path/to/file1.log',
+          compression: UploadCompression.gzip,
+        ));
+
+        expect(log.single.arguments, containsPair('compression', 'gzip'));
+      });
+
+      test('passes the deduplication options', () async {
+        mockResponse = 'TASK123';
+
+        await uploader.enqueue(RawUpload(
+          url: 'http://www.somewhere.com',
+          path: '/path/to/file1',
+          deduplicate: true,
+          dedupCheckUrl: 'http://www.somewhere.com/exists',
+        ));
+
+        expect(
+          log.single.arguments,
+          allOf(
+            containsPair('deduplicate', true),
+            containsPair('dedupCheckUrl', 'http://www.somewhere.com/exists'),
+          ),
+        );
+      });
+
+      test('passes the chunk size', () async {
+        mockResponse = 'TASK123';
+
+        await uploader.enqueue(RawUpload(
+          url: 'http://www.somewhere.com',
+          path: '/path/to/file1',
+          chunkSize: 1024 * 1024,
+        ));
+
+        expect(
+          log.single.arguments,
+          containsPair('chunkSize', 1024 * 1024),
+        );
+      });
+
+      test('passes the parallel upload configuration', () async {
+        mockResponse = 'TASK123';
+
+        await uploader.enqueue(RawUpload(
+          url: 'http://www.somewhere.com',
+          path: '/path/to/file1',
+          parallelParts: 4,
+          completeUrl: 'http://www.somewhere.com/complete',
+        ));
+
+        expect(
+          log.single.arguments,
+          allOf(
+            containsPair('parallelParts', 4),
+            containsPair('completeUrl', 'http://www.somewhere.com/complete'),
+          ),
+        );
+      });
+    });
+    group('enqueueAll', () {
+      final multipartUpload = MultipartFormDataUpload(
+        url: 'http://www.somewhere.com',
+        files: [FileItem(path: '/path/to/file1')],
+      );
+      final rawUpload = RawUpload(
+        url: 'http://www.somewhere.com',
+        path: '/path/to/file2',
+      );
+
+      test('passes all uploads in a single call', () async {
+        mockResponse = ['TASK1', 'TASK2'];
+
+        expect(
+          await uploader.enqueueAll([multipartUpload, multipartUpload]),
+          ['TASK1', 'TASK2'],
+        );
+        expect(log, hasLength(1));
+        expect(log.single.method, 'enqueueAll');
+        expect(log.single.arguments['uploads'], hasLength(2));
+        expect(
+          log.single.arguments['uploads'][0],
+          containsPair('files', [
+            {'path': '/path/to/file1', 'fieldname': 'file'}
+          ]),
+        );
+      });
+
+      test('passes mixed uploads in a single call', () async {
+        mockResponse = ['MULTIPART1', 'RAW1', 'MULTIPART2'];
+
+        expect(
+          await uploader
+              .enqueueAll([multipartUpload, rawUpload, multipartUpload]),
+          ['MULTIPART1', 'RAW1', 'MULTIPART2'],
+        );
+        expect(log, hasLength(1));
+        expect(log.single.method, 'enqueueAll');
+
+        final uploads = log.single.arguments['uploads'];
+        expect(uploads.map((upload) => upload['binary']), [false, true, false]);
+        expect(uploads[1], containsPair('path', '/path/to/file2'));
+      });
+
+      test('does not call the platform without uploads', () async {
+        expect(await uploader.enqueueAll([]), isEmpty);
+        expect(log, isEmpty);
+      });
     });
+
     group('cancel', () {
       test('calls correctly', () async {
         await uploader.cancel(taskId: 'task123');
@@ -192,6 +337,121 @@ void main() {
         ]);
       });
     });
+    group('setProgressBatching', () {
+      test('passes the window in milliseconds', () async {
+        await uploader.setProgressBatching(Duration(milliseconds: 16));
+
+        expect(log, <Matcher>[
+          isMethodCall('setProgressBatching', arguments: <String, dynamic>{
+            'windowMillis': 16,
+          }),
+        ]);
+      });
+
+      test('disables batching', () async {
+        await uploader.setProgressBatching(null);
+
+        expect(log, <Matcher>[
+          isMethodCall('setProgressBatching', arguments: <String, dynamic>{
+            'windowMillis': 0,
+          }),
+        ]);
+      });
+    });
+    group('setMaxConcurrentTasks', () {
+      test('passes the arguments correctly', () async {
+        await uploader.setMaxConcurrentTasks(5);
+
+        expect(log, <Matcher>[
+          isMethodCall('setMaxConcurrentTasks', arguments: <String, dynamic>{
+            'maxConcurrentTasks': 5,
+            'maxConcurrentTasksPerHost': null,
+          }),
+        ]);
+      });
+
+      test('passes the per host limit', () async {
+        await uploader.setMaxConcurrentTasks(5, perHost: 2);
+
+        expect(
+          log.single.arguments,
+          containsPair('maxConcurrentTasksPerHost', 2),
+        );
+      });
+    });
+
+    group('setBandwidthLimit', () {
+      test('passes the limit', () async {
+        await uploader.setBandwidthLimit(512 * 1024);
+
+        expect(log, <Matcher>[
+          isMethodCall('setBandwidthLimit', arguments: <String, dynamic>{
+            'bytesPerSecond': 512 * 1024,
+          }),
+        ]);
+      });
+
+      test('removes the limit', () async {
+        await uploader.setBandwidthLimit(null);
+
+        expect(log, <Matcher>[
+          isMethodCall('setBandwidthLimit', arguments: <String, dynamic>{
+            'bytesPerSecond': 0,
+          }),
+        ]);
+      });
+    });
+
+    group('setAdaptiveConcurrency', () {
+      test('passes the arguments correctly', () async {
+        await uploader.setAdaptiveConcurrency(true);
+
+        expect(log, <Matcher>[
+          isMethodCall('setAdaptiveConcurrency', arguments: <String, dynamic>{
+            'enabled': true,
+          }),
+        ]);
+      });
+    });
+
+    group('getSchedulerStats', () {
+      test('parses the stats', () async {
+        mockResponse = {
+          'queued': 12,
+          'running': 3,
+          'completed': 40,
+          'maxConcurrentTasks': 3,
+          'maxConcurrentTasksPerHost': 2,
+          'adaptiveConcurrency': true,
+          'throughputSamples': [1000, 2000],
+          'backgroundEngineRunning': true,
+          'backgroundEngineStarts': 1,
+          'backgroundEngineStartupMillis': 420,
+          'backgroundEngineNativeHeapBytes': 12345678,
+        };
+
+        expect(
+          await uploader.getSchedulerStats(),
+          UploadSchedulerStats(
+            queued: 12,
+            running: 3,
+            completed: 40,
+            maxConcurrentTasks: 3,
+            maxConcurrentTasksPerHost: 2,
+            adaptiveConcurrency: true,
+            throughputSamples: [1000, 2000],
+            backgroundEngineRunning: true,
+            backgroundEngineStarts: 1,
+            backgroundEngineStartupMillis: 420,
+            backgroundEngineNativeHeapBytes: 12345678,
+          ),
+        );
+        expect(log, <Matcher>[
+          isMethodCall('getSchedulerStats', arguments: null),
+        ]);
+      });
+    });
+
     group('progress stream', () {
       testWidgets('supports multiple subscriptions',
           (WidgetTester tester) async {
@@ -213,6 +473,20 @@ void main() {
         expect(await c1.future, fakeTaskId);
         expect(await c2.future, fakeTaskId);
       });
+
+      testWidgets('unpacks batched events', (WidgetTester tester) async {
+        final events = uploader.progress.take(2).toList();
+
+        progressController.add([
+          {'taskId': 'task1', 'status': 2, 'progress': 10},
+          {'taskId': 'task2', 'status': 2, 'progress': 20},
+        ]);
+
+        expect(await events, [
+          UploadTaskProgress('task1', 10, UploadTaskStatus.running),
+          UploadTaskProgress('task2', 20, UploadTaskStatus.running),
+        ]);
+      });
     });
   });
 
@@ -236,5 +510,92 @@ void main() {
       expect(await c1.future, fakeTaskId);
       expect(await c2.future, fakeTaskId);
     });
+
+    testWidgets('unpacks batched events', (WidgetTester tester) async {
+      final events = uploader.result.take(2).toList();
+
+      resultController.add([
+        {'taskId': 'task1', 'status': 3, 'statusCode': 200, 'message': 'ok'},
+        {'taskId': 'task2', 'status': 4, 'statusCode': 500, 'message': 'no'},
+      ]);
+
+      expect(await events, [
+        UploadTaskResponse(
+          taskId: 'task1',
+          status: UploadTaskStatus.complete,
+          statusCode: 200,
+          response: 'ok',
+          headers: {},
+        ),
+        UploadTaskResponse(
+          taskId: 'task2',
+          status: UploadTaskStatus.failed,
+          statusCode: 500,
+          response: 'no',
+          headers: {},
+        ),
+      ]);
+    });
+  });
+
+  group('metrics stream', () {
+    testWidgets('parses the metrics', (WidgetTester tester) async {
+      final event = uploader.metrics.first;
+
+      metricsController.add({
+        'taskId': 'task1',
+        'calls': 2,
+        'connections': 1,
+        'dnsMs': 12,
+        'connectMs': 80,
+        'tlsMs': 50,
+        'requestHeadersMs': 1,
+        'requestBodyMs': 900,
+        'timeToFirstByteMs': 150,
+        'responseBodyMs': 3,
+        'totalMs': 1200,
+        'requestBodyBytes': 1048576,
+        'responseBodyBytes': 42,
+      });
+
+      expect(
+        await event,
+        UploadTaskMetrics(
+          taskId: 'task1',
+          calls: 2,
+          connections: 1,
+          dns: Duration(milliseconds: 12),
+          connect: Duration(milliseconds: 80),
+          tls: Duration(milliseconds: 50),
+          requestHeaders: Duration(milliseconds: 1),
+          requestBody: Duration(milliseconds: 900),
+          timeToFirstByte: Duration(milliseconds: 150),
+          responseBody: Duration(milliseconds: 3),
+          total: Duration(milliseconds: 1200),
+          requestBodyBytes: 1048576,
+          responseBodyBytes: 42,
+        ),
+      );
+    });
+
+    testWidgets('are attached to results', (WidgetTester tester) async {
+      final event = uploader.result.first;
+
+      resultController.add({
+        'taskId': 'task1',
+        'status': 3,
+        'statusCode': 200,
+        'metrics': {'calls': 1, 'totalMs': 250},
+      });
+
+      expect(
+        (await event).metrics,
+        UploadTaskMetrics(
+          taskId: 'task1',
+          calls: 1,
+          total: Duration(milliseconds: 250),
+        ),
+      );
+    });
   });
 }